@@ -0,0 +1,267 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide log of document opens, used to rank documents by frecency.
+ *
+ * Every open is appended to a small binary file as a (document key, weight)
+ * record. Writes are buffered and flushed in batches on a background thread.
+ * The frecency score of a document is the sum of exponentially decayed
+ * weights of its opens; it is kept in log space relative to a fixed epoch, so
+ * an open only adds one term to the score of that document and the ranking
+ * never has to be recomputed from history.
+ */
+public class AccessLog {
+
+    public interface Listener {
+        /**
+         * Called on the main thread after a score changed. The key is null when
+         * the scores of many documents changed at once, e.g. after loading.
+         */
+        void onAccessRecorded(String documentKey);
+    }
+
+    private static final String TAG = "AccessLog";
+    private static final String LOG_FILE_NAME = "access_log.bin";
+
+    // A document opened a week ago counts half as much as one opened now
+    private static final double HALF_LIFE_MS = 7 * 24 * 60 * 60 * 1000.0;
+    private static final double DECAY_MS = HALF_LIFE_MS / Math.log(2);
+
+    private static final long FLUSH_DELAY_MS = 2000;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+
+    private static AccessLog instance;
+
+    private final File logFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    // Accessed on the main thread only
+    private final Map<String, Double> scores = new HashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    // Guarded by pendingRecords
+    private final List<Record> pendingRecords = new ArrayList<>();
+
+    // Accessed on the writer thread only
+    private int recordsOnDisk;
+
+    public static synchronized AccessLog get(Context context) {
+        if (instance == null) {
+            instance = new AccessLog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AccessLog(Context context) {
+        logFile = new File(context.getFilesDir(), LOG_FILE_NAME);
+        writer.execute(this::load);
+    }
+
+    /**
+     * Records that a document was opened. Must be called on the main thread.
+     */
+    public void recordOpen(String documentKey) {
+        if (documentKey == null) {
+            return;
+        }
+
+        Record record = new Record(documentKey, System.currentTimeMillis() / DECAY_MS);
+        addToScore(record.key, record.logWeight);
+
+        synchronized (pendingRecords) {
+            pendingRecords.add(record);
+        }
+        mainHandler.removeCallbacks(flushRunnable);
+        mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+
+        notifyListeners(documentKey);
+    }
+
+    /**
+     * Returns the frecency score of a document in log space. Scores are only
+     * meaningful relative to each other; documents that were never opened
+     * return negative infinity.
+     */
+    public double getScore(String documentKey) {
+        Double score = scores.get(documentKey);
+        return score != null ? score : Double.NEGATIVE_INFINITY;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(String documentKey) {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onAccessRecorded(documentKey);
+        }
+    }
+
+    private void addToScore(String key, double logWeight) {
+        Double current = scores.get(key);
+        scores.put(key, current == null ? logWeight : logAddExp(current, logWeight));
+    }
+
+    // log(exp(a) + exp(b)) without overflowing
+    private static double logAddExp(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /**
+     * Writes buffered records to disk on the writer thread.
+     */
+    private void flush() {
+        final List<Record> batch;
+        synchronized (pendingRecords) {
+            if (pendingRecords.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+        }
+
+        writer.execute(() -> {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(logFile, true)))) {
+                for (Record record : batch) {
+                    record.writeTo(out);
+                }
+                recordsOnDisk += batch.size();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to append access records", e);
+            }
+        });
+    }
+
+    /**
+     * Replays the log once at startup and hands the aggregated scores to the
+     * main thread. Opens recorded before loading finished are already in the
+     * score table and are combined with the loaded values.
+     */
+    private void load() {
+        final Map<String, Double> loaded = new HashMap<>();
+        recordsOnDisk = 0;
+
+        if (logFile.exists()) {
+            try {
+                // The log is kept small by compaction, so it is read in one go
+                byte[] bytes = readFully(logFile);
+                ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+                DataInputStream in = new DataInputStream(buffer);
+                int validLength = 0;
+                while (buffer.available() > 0) {
+                    Record record;
+                    try {
+                        record = Record.readFrom(in);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    Double current = loaded.get(record.key);
+                    loaded.put(record.key, current == null ? record.logWeight : logAddExp(current, record.logWeight));
+                    recordsOnDisk++;
+                    validLength = bytes.length - buffer.available();
+                }
+
+                // Drop a partially written trailing record so later appends stay aligned
+                if (validLength < bytes.length) {
+                    try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                        file.setLength(validLength);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read access log", e);
+            }
+        }
+
+        // Rewrite the log as one record per document once repeated opens dominate it
+        if (recordsOnDisk >= COMPACT_MIN_RECORDS && recordsOnDisk > 2 * loaded.size()) {
+            compact(loaded);
+        }
+
+        mainHandler.post(() -> {
+            for (Map.Entry<String, Double> entry : loaded.entrySet()) {
+                addToScore(entry.getKey(), entry.getValue());
+            }
+            notifyListeners(null);
+        });
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    private void compact(Map<String, Double> aggregated) {
+        File tempFile = new File(logFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            for (Map.Entry<String, Double> entry : aggregated.entrySet()) {
+                new Record(entry.getKey(), entry.getValue()).writeTo(out);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compact access log", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (tempFile.renameTo(logFile)) {
+            recordsOnDisk = aggregated.size();
+        }
+    }
+
+    /**
+     * One open, or the aggregate of several opens after compaction. The weight
+     * is stored as a natural log so both kinds of record combine the same way.
+     */
+    private static final class Record {
+        final String key;
+        final double logWeight;
+
+        Record(String key, double logWeight) {
+            this.key = key;
+            this.logWeight = logWeight;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeUTF(key);
+            out.writeDouble(logWeight);
+        }
+
+        static Record readFrom(DataInputStream in) throws IOException {
+            String key = in.readUTF();
+            double logWeight = in.readDouble();
+            return new Record(key, logWeight);
+        }
+    }
+}
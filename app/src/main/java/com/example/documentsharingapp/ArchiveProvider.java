@@ -0,0 +1,358 @@
+package com.example.documentsharingapp;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Serves several documents to other apps as one ZIP archive.
+ *
+ * The archive never exists as a file. Each time a receiving app opens it,
+ * a writer thread zips the documents straight into a pipe that the app
+ * reads from, so sharing starts with the first bytes and needs no storage
+ * however large the selection is. Formats that are compressed already are
+ * stored as they are, which keeps the writer from spending CPU on data
+ * that would not shrink.
+ *
+ * What an archive holds is saved under files/archives, named by the token
+ * in its URI, so a URI handed out keeps working after the process is
+ * restarted. Only the most recent archives are kept.
+ */
+public class ArchiveProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.example.documentsharingapp.archive";
+    public static final String MIME_TYPE = "application/zip";
+
+    private static final String TAG = "ArchiveProvider";
+    // Archives are read soon after they are shared; older ones are forgotten
+    private static final int MAX_ARCHIVES = 16;
+    private static final String ARCHIVE_DIRECTORY = "archives";
+    private static final int ARCHIVE_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    // Archives handed out or read back since the process started, by the token in their URI
+    private static final Map<String, Archive> ARCHIVES = new LinkedHashMap<String, Archive>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Archive> eldest) {
+            return size() > MAX_ARCHIVES;
+        }
+    };
+
+    // One thread per archive being read; each spends its time blocked on the pipe
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool();
+
+    private static final class Archive {
+        final String name;
+        final List<Entry> entries;
+
+        Archive(String name, List<Entry> entries) {
+            this.name = name;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final File file;
+        final long time;
+        final boolean compressed;
+
+        Entry(String name, File file, long time, boolean compressed) {
+            this.name = name;
+            this.file = file;
+            this.time = time;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Returns the file holding a document's content on this device, or null
+     * if it is not here, e.g. because it was evicted or imported elsewhere.
+     */
+    public static File findLocalFile(Context context, Document document) {
+        if (document.getLocalPath() != null) {
+            File file = new File(document.getLocalPath());
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return BlobSync.get(context).getDownloadedFile(document);
+    }
+
+    /**
+     * Registers an archive of the given documents and returns the URI other
+     * apps can read it from. Every document must be on this device (see
+     * {@link #findLocalFile}); one that disappears before the archive is read
+     * fails the read instead of being left out.
+     * @param name The display name of the archive, including ".zip".
+     */
+    public static Uri createArchive(Context context, String name, List<Document> documents) {
+        List<Entry> entries = new ArrayList<>(documents.size());
+        Set<String> entryNames = new HashSet<>();
+        for (Document document : documents) {
+            File file = findLocalFile(context, document);
+            if (file == null) {
+                throw new IllegalArgumentException(document.getFileName() + " is not on this device");
+            }
+            entries.add(new Entry(uniqueName(document.getFileName(), entryNames), file,
+                    document.getTimestamp(), isCompressed(document.resolveType())));
+        }
+
+        String token = UUID.randomUUID().toString();
+        Archive archive = new Archive(name, entries);
+        synchronized (ARCHIVES) {
+            ARCHIVES.put(token, archive);
+        }
+        File directory = new File(context.getFilesDir(), ARCHIVE_DIRECTORY);
+        WRITERS.execute(() -> saveArchive(directory, token, archive));
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(token)
+                .appendPath(name)
+                .build();
+    }
+
+    // A ZIP may not hold two entries of the same name, so later ones are numbered
+    private static String uniqueName(String fileName, Set<String> taken) {
+        String name = fileName;
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        for (int copy = 2; !taken.add(name); copy++) {
+            name = base + " (" + copy + ")" + extension;
+        }
+        return name;
+    }
+
+    private static boolean isCompressed(FileType type) {
+        switch (type) {
+            case JPEG:
+            case PNG:
+            case GIF:
+            case WEBP:
+            case DOCX:
+            case XLSX:
+            case PPTX:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Archive findArchive(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        String token = segments.get(0);
+        synchronized (ARCHIVES) {
+            Archive archive = ARCHIVES.get(token);
+            if (archive != null) {
+                return archive;
+            }
+        }
+        // Handed out before the process was restarted
+        Archive archive = loadArchive(new File(getContext().getFilesDir(), ARCHIVE_DIRECTORY), token);
+        if (archive != null) {
+            synchronized (ARCHIVES) {
+                ARCHIVES.put(token, archive);
+            }
+        }
+        return archive;
+    }
+
+    // Runs on a writer thread; the archive is served from memory until then
+    private static synchronized void saveArchive(File directory, String token, Archive archive) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+        File tempFile = new File(directory, token + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(ARCHIVE_VERSION);
+            out.writeUTF(archive.name);
+            out.writeInt(archive.entries.size());
+            for (Entry entry : archive.entries) {
+                out.writeUTF(entry.name);
+                out.writeUTF(entry.file.getPath());
+                out.writeLong(entry.time);
+                out.writeBoolean(entry.compressed);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save archive " + token, e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(new File(directory, token))) {
+            Log.w(TAG, "Failed to save archive " + token);
+            tempFile.delete();
+            return;
+        }
+
+        // Newest first; everything past the limit is forgotten
+        File[] saved = directory.listFiles();
+        if (saved == null || saved.length <= MAX_ARCHIVES) {
+            return;
+        }
+        Arrays.sort(saved, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_ARCHIVES; i < saved.length; i++) {
+            saved[i].delete();
+        }
+    }
+
+    private static Archive loadArchive(File directory, String token) {
+        // Tokens are UUIDs; anything else could point outside the directory
+        if (!token.matches("[0-9a-f-]+")) {
+            return null;
+        }
+        File file = new File(directory, token);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != ARCHIVE_VERSION) {
+                return null;
+            }
+            String name = in.readUTF();
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(in.readUTF(), new File(in.readUTF()), in.readLong(), in.readBoolean()));
+            }
+            return new Archive(name, entries);
+        } catch (FileNotFoundException e) {
+            // Never handed out, or forgotten since
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read archive " + token, e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        Archive archive = findArchive(uri);
+        if (archive == null) {
+            return null;
+        }
+        String[] columns = projection != null ? projection : DEFAULT_PROJECTION;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(columns[i])) {
+                row[i] = archive.name;
+            }
+            // The size is not known until the archive has been written, so it stays null
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Archives are read-only");
+        }
+        Archive archive = findArchive(uri);
+        if (archive == null) {
+            throw new FileNotFoundException("No archive at " + uri);
+        }
+
+        ParcelFileDescriptor[] pipe;
+        try {
+            // A reliable pipe lets a failed write reach the reader as an error, not as a short archive
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Failed to open pipe: " + e.getMessage());
+        }
+        ParcelFileDescriptor writeSide = pipe[1];
+        WRITERS.execute(() -> writeArchive(archive, writeSide));
+        return pipe[0];
+    }
+
+    private static void writeArchive(Archive archive, ParcelFileDescriptor writeSide) {
+        // The stream does not own the descriptor; closing writeSide is what ends the archive
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(
+                new FileOutputStream(writeSide.getFileDescriptor()), BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            for (Entry entry : archive.entries) {
+                zip.setLevel(entry.compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                ZipEntry zipEntry = new ZipEntry(entry.name);
+                zipEntry.setTime(entry.time);
+                zip.putNextEntry(zipEntry);
+                // A missing file throws here, so the reader sees an error rather than a short archive
+                try (InputStream in = DocumentStore.openStream(entry.file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        zip.write(buffer, 0, read);
+                    }
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+            writeSide.close();
+        } catch (IOException e) {
+            // Also the way out when the reader closes its end early
+            try {
+                writeSide.closeWithError(e.getMessage());
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Archives are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Archives are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Archives are read-only");
+    }
+}
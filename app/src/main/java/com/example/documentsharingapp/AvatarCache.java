@@ -0,0 +1,147 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of decoded profile pictures.
+ *
+ * Avatars are decoded on a background thread, downsampled and scaled to the
+ * exact pixel size of the view that shows them, and kept in memory keyed by
+ * file, modification time and size. Screens showing the same avatar at the
+ * same size share one bitmap, and returning to a screen costs no decode.
+ */
+public class AvatarCache {
+
+    // Avatars are small; this holds every size the app shows many times over
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static AvatarCache instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    public static synchronized AvatarCache get(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Shows the image at the given path in the view, sized to the view.
+     * Views with a size of wrap_content or match_parent are loaded once they
+     * have been laid out.
+     */
+    public void load(String path, ImageView imageView) {
+        if (path == null) {
+            return;
+        }
+        int size = fixedSize(imageView);
+        if (size <= 0) {
+            imageView.post(() -> {
+                if (imageView.getWidth() > 0) {
+                    load(path, imageView, Math.min(imageView.getWidth(), imageView.getHeight()));
+                }
+            });
+            return;
+        }
+        load(path, imageView, size);
+    }
+
+    private void load(String profilePath, ImageView imageView, int size) {
+        // Decode the smallest pre-sized rendition that still covers the view
+        String path = ProfileImageProcessor.pathForSize(profilePath, size);
+        File file = new File(path);
+        if (!file.exists()) {
+            return;
+        }
+
+        String key = path + ":" + file.lastModified() + ":" + size;
+        imageView.setTag(R.id.avatarKey, key);
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        executor.execute(() -> {
+            Bitmap bitmap = memoryCache.get(key);
+            if (bitmap == null) {
+                bitmap = decode(path, size);
+                if (bitmap == null) {
+                    return;
+                }
+                memoryCache.put(key, bitmap);
+            }
+
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                // The view may have been asked to show another avatar since
+                if (key.equals(imageView.getTag(R.id.avatarKey))) {
+                    imageView.setImageBitmap(result);
+                }
+            });
+        });
+    }
+
+    private static int fixedSize(ImageView imageView) {
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params == null || params.width <= 0 || params.height <= 0) {
+            return 0;
+        }
+        return Math.min(params.width, params.height);
+    }
+
+    /**
+     * Decodes a square, center-cropped bitmap of exactly size x size pixels.
+     */
+    private static Bitmap decode(String path, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        int shortEdge = Math.min(options.outWidth, options.outHeight);
+        if (shortEdge <= 0) {
+            return null;
+        }
+
+        // Subsample in the decoder as far as possible without going below the target
+        int sampleSize = 1;
+        while (shortEdge / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        int edge = Math.min(decoded.getWidth(), decoded.getHeight());
+        Bitmap square = Bitmap.createBitmap(decoded,
+                (decoded.getWidth() - edge) / 2, (decoded.getHeight() - edge) / 2, edge, edge);
+        Bitmap scaled = Bitmap.createScaledBitmap(square, size, size, true);
+        if (square != decoded) {
+            decoded.recycle();
+        }
+        if (scaled != square) {
+            square.recycle();
+        }
+        return scaled;
+    }
+}
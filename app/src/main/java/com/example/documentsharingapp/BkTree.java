@@ -0,0 +1,121 @@
+package com.example.documentsharingapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A BK-tree over 64-bit hashes using Hamming distance.
+ *
+ * Each child edge is labelled with the distance to its parent, so a radius
+ * query only descends into children whose label lies within radius of the
+ * distance to the query. This keeps near-duplicate lookups well below a
+ * linear scan for small radii.
+ */
+public class BkTree {
+
+    private static final int MAX_DISTANCE = 64;
+
+    private Node root;
+    private int size;
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    public void add(long hash, String key) {
+        size++;
+        if (root == null) {
+            root = new Node(hash);
+            root.keys.add(key);
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            int d = distance(hash, node.hash);
+            if (d == 0) {
+                node.keys.add(key);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new Node[MAX_DISTANCE + 1];
+            }
+            Node child = node.children[d];
+            if (child == null) {
+                child = new Node(hash);
+                child.keys.add(key);
+                node.children[d] = child;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Removes a key stored under the given hash. The node itself stays in the
+     * tree as a routing node, since removing it would require rebuilding its
+     * subtree.
+     */
+    public boolean remove(long hash, String key) {
+        Node node = root;
+        while (node != null) {
+            int d = distance(hash, node.hash);
+            if (d == 0) {
+                boolean removed = node.keys.remove(key);
+                if (removed) {
+                    size--;
+                }
+                return removed;
+            }
+            node = node.children != null ? node.children[d] : null;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the keys of all hashes within the given Hamming radius.
+     */
+    public List<String> search(long hash, int radius) {
+        List<String> results = new ArrayList<>();
+        if (root == null) {
+            return results;
+        }
+
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int d = distance(hash, node.hash);
+            if (d <= radius) {
+                results.addAll(node.keys);
+            }
+            if (node.children == null) {
+                continue;
+            }
+            int from = Math.max(1, d - radius);
+            int to = Math.min(MAX_DISTANCE, d + radius);
+            for (int i = from; i <= to; i++) {
+                if (node.children[i] != null) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        return results;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+        final long hash;
+        final List<String> keys = new ArrayList<>(1);
+        Node[] children;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.documentsharingapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a {@link SeekableBlob} from start to end. Skipping moves the
+ * position without reading, so decoders that skip over parts of a file
+ * do not pay for them.
+ */
+public class BlobInputStream extends InputStream {
+
+    private final SeekableBlob blob;
+    private final byte[] single = new byte[1];
+    private long position;
+
+    public BlobInputStream(SeekableBlob blob) {
+        this.blob = blob;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = blob.read(position, buffer, offset, length);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, blob.getSize() - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, blob.getSize() - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        blob.close();
+    }
+}
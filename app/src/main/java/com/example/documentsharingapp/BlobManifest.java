@@ -0,0 +1,47 @@
+package com.example.documentsharingapp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chunks a document's content is made of, in order.
+ */
+public final class BlobManifest {
+
+    private final long size;
+    private final List<String> chunkHashes;
+    private final int[] chunkLengths;
+
+    public BlobManifest(long size, List<String> chunkHashes, int[] chunkLengths) {
+        if (chunkHashes.size() != chunkLengths.length) {
+            throw new IllegalArgumentException("Every chunk needs a hash and a length");
+        }
+        this.size = size;
+        this.chunkHashes = Collections.unmodifiableList(chunkHashes);
+        this.chunkLengths = chunkLengths.clone();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public List<String> getChunkHashes() {
+        return chunkHashes;
+    }
+
+    public int getChunkCount() {
+        return chunkLengths.length;
+    }
+
+    public int getChunkLength(int index) {
+        return chunkLengths[index];
+    }
+
+    public int getMaxChunkLength() {
+        int max = 0;
+        for (int length : chunkLengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+}
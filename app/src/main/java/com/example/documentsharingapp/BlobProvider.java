@@ -0,0 +1,265 @@
+package com.example.documentsharingapp;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves documents to other apps through proxy file descriptors.
+ *
+ * A viewer gets a descriptor it can seek and read like a file, while every
+ * read is answered from the document's stored form by a
+ * {@link BlobProxyCallback}. Whatever form documents are stored in, no
+ * plain copy is ever written out for another app to read, and a viewer
+ * that jumps to the last page of a large document only reads that part.
+ *
+ * What a URI points at is saved under files/shared_documents, named by the
+ * document key in the URI, so a viewer that opens it after this process
+ * was restarted still gets the document. Only the most recent ones are
+ * kept.
+ */
+public class BlobProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.example.documentsharingapp.blobs";
+
+    private static final String TAG = "BlobProvider";
+    // Documents handed out recently; a viewer may reopen its URI while it is shown
+    private static final int MAX_DOCUMENTS = 64;
+    private static final String ENTRY_DIRECTORY = "shared_documents";
+    private static final int ENTRY_VERSION = 1;
+    private static final String[] DEFAULT_PROJECTION = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+    // Entries handed out or read back since the process started, by document key
+    private static final Map<String, Entry> DOCUMENTS = new LinkedHashMap<String, Entry>(MAX_DOCUMENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_DOCUMENTS;
+        }
+    };
+
+    // Saves entries in the order they were handed out
+    private static final ExecutorService SAVER = Executors.newSingleThreadExecutor();
+
+    private static final class Entry {
+        final String localPath;
+        // Null for documents imported before hashes were recorded
+        final String contentHash;
+        final String fileName;
+        final String mimeType;
+
+        Entry(String localPath, String contentHash, String fileName, String mimeType) {
+            this.localPath = localPath;
+            this.contentHash = contentHash;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * Returns the URI other apps can read a document from.
+     */
+    public static Uri uriFor(Context context, Document document) {
+        String key = document.getKey();
+        Entry entry = new Entry(document.getLocalPath(), document.getContentHash(), document.getFileName(),
+                document.resolveType().getMimeType());
+        synchronized (DOCUMENTS) {
+            DOCUMENTS.put(key, entry);
+        }
+        File directory = new File(context.getFilesDir(), ENTRY_DIRECTORY);
+        SAVER.execute(() -> saveEntry(directory, key, entry));
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(document.getKey())
+                .appendPath(document.getFileName())
+                .build();
+    }
+
+    private Entry findEntry(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        String key = segments.get(0);
+        synchronized (DOCUMENTS) {
+            Entry entry = DOCUMENTS.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        // Handed out before the process was restarted
+        Entry entry = loadEntry(new File(getContext().getFilesDir(), ENTRY_DIRECTORY), key);
+        if (entry != null) {
+            synchronized (DOCUMENTS) {
+                DOCUMENTS.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the file holding an entry's content: the document's own file,
+     * or its downloaded copy once it was evicted and fetched again.
+     */
+    private File contentFile(Entry entry) {
+        File file = new File(entry.localPath);
+        if (!file.isFile() && entry.contentHash != null) {
+            File downloaded = BlobSync.get(getContext()).getDownloadLocation(entry.contentHash);
+            if (downloaded.isFile()) {
+                return downloaded;
+            }
+        }
+        return file;
+    }
+
+    private static void saveEntry(File directory, String key, Entry entry) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+        File tempFile = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(ENTRY_VERSION);
+            out.writeUTF(entry.localPath);
+            out.writeBoolean(entry.contentHash != null);
+            if (entry.contentHash != null) {
+                out.writeUTF(entry.contentHash);
+            }
+            out.writeUTF(entry.fileName);
+            out.writeUTF(entry.mimeType);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save " + key, e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(new File(directory, key))) {
+            Log.w(TAG, "Failed to save " + key);
+            tempFile.delete();
+            return;
+        }
+
+        // Newest first; everything past the limit is forgotten
+        File[] saved = directory.listFiles();
+        if (saved == null || saved.length <= MAX_DOCUMENTS) {
+            return;
+        }
+        Arrays.sort(saved, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_DOCUMENTS; i < saved.length; i++) {
+            saved[i].delete();
+        }
+    }
+
+    private static Entry loadEntry(File directory, String key) {
+        // Database keys never contain these, but a crafted URI could point outside the directory
+        if (!key.matches("[A-Za-z0-9_-]+")) {
+            return null;
+        }
+        File file = new File(directory, key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != ENTRY_VERSION) {
+                return null;
+            }
+            String localPath = in.readUTF();
+            String contentHash = in.readBoolean() ? in.readUTF() : null;
+            return new Entry(localPath, contentHash, in.readUTF(), in.readUTF());
+        } catch (FileNotFoundException e) {
+            // Never handed out, or forgotten since
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        Entry entry = findEntry(uri);
+        return entry != null ? entry.mimeType : null;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        Entry entry = findEntry(uri);
+        if (entry == null) {
+            return null;
+        }
+        String[] columns = projection != null ? projection : DEFAULT_PROJECTION;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(columns[i])) {
+                row[i] = entry.fileName;
+            } else if (OpenableColumns.SIZE.equals(columns[i])) {
+                row[i] = contentSize(contentFile(entry));
+            }
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    private static Long contentSize(File file) {
+        try (SeekableBlob blob = DocumentStore.open(file)) {
+            return blob.getSize();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Documents are read-only");
+        }
+        Entry entry = findEntry(uri);
+        if (entry == null) {
+            throw new FileNotFoundException("No document at " + uri);
+        }
+
+        try {
+            return DocumentStore.openDescriptor(getContext(), contentFile(entry));
+        } catch (IOException e) {
+            throw new FileNotFoundException("Failed to open " + uri + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Documents are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Documents are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Documents are read-only");
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.documentsharingapp;
+
+import android.os.ProxyFileDescriptorCallback;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves reads on a proxy file descriptor from a {@link SeekableBlob}.
+ *
+ * Content is read in fixed blocks kept in a small LRU cache, so the many
+ * small and repeated reads viewers make (a PDF's cross-reference table, a
+ * ZIP's central directory, re-rendering a page) touch the stored form once.
+ * Callbacks arrive on a single handler thread, so the cache is not locked.
+ */
+public class BlobProxyCallback extends ProxyFileDescriptorCallback {
+
+    // Aligned with encrypted chunks, so filling a block decrypts exactly one
+    private static final int BLOCK_SIZE = EncryptedBlob.CHUNK_SIZE;
+    private static final int CACHED_BLOCKS = 16;
+
+    private final SeekableBlob blob;
+    private final long size;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    public BlobProxyCallback(SeekableBlob blob) throws IOException {
+        this.blob = blob;
+        this.size = blob.getSize();
+    }
+
+    @Override
+    public long onGetSize() {
+        return size;
+    }
+
+    @Override
+    public int onRead(long offset, int length, byte[] data) throws ErrnoException {
+        int copied = 0;
+        try {
+            while (copied < length && offset + copied < size) {
+                long position = offset + copied;
+                long blockIndex = position / BLOCK_SIZE;
+                byte[] block = getBlock(blockIndex);
+                int blockOffset = (int) (position - blockIndex * BLOCK_SIZE);
+                int count = Math.min(length - copied, block.length - blockOffset);
+                System.arraycopy(block, blockOffset, data, copied, count);
+                copied += count;
+            }
+        } catch (IOException e) {
+            throw new ErrnoException("onRead", OsConstants.EIO);
+        }
+        return copied;
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte[] block = blocks.get(blockIndex);
+        if (block != null) {
+            return block;
+        }
+        long start = blockIndex * BLOCK_SIZE;
+        block = new byte[(int) Math.min(BLOCK_SIZE, size - start)];
+        int filled = 0;
+        while (filled < block.length) {
+            int read = blob.read(start + filled, block, filled, block.length - filled);
+            if (read < 0) {
+                throw new IOException("Content ended at " + (start + filled) + " of " + size);
+            }
+            filled += read;
+        }
+        blocks.put(blockIndex, block);
+        return block;
+    }
+
+    @Override
+    public void onRelease() {
+        blocks.clear();
+        try {
+            blob.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.documentsharingapp;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Where document content is kept so that it can reach other devices.
+ *
+ * Content is stored as chunks keyed by their SHA-256 hash, plus one
+ * {@link BlobManifest} per document keyed by the hash of the whole
+ * content. Identical chunks are stored once, an upload asks which of its
+ * chunks the store lacks and sends only those, and anything read back can
+ * be checked against its key. Implementations must allow calls from several threads at once,
+ * since transfers run chunks in parallel.
+ */
+public interface BlobStore {
+
+    /**
+     * Returns which of the given chunks the store does not have. Answers a
+     * whole batch at once, so a remote store needs one round trip for it.
+     */
+    Set<String> findMissing(Collection<String> chunkHashes) throws IOException;
+
+    void putChunk(String chunkHash, byte[] data, int length) throws IOException;
+
+    /**
+     * Reads a chunk into the buffer, which must be large enough for it.
+     * @return The length of the chunk.
+     * @throws java.io.FileNotFoundException If the store does not have it.
+     */
+    int getChunk(String chunkHash, byte[] buffer) throws IOException;
+
+    /**
+     * Stores the manifest of a document. Call it only once all its chunks
+     * are stored; a manifest being present means the content is complete.
+     */
+    void putManifest(String contentHash, BlobManifest manifest) throws IOException;
+
+    /**
+     * Returns the manifest of a document, or null if it was never
+     * completely uploaded.
+     */
+    BlobManifest getManifest(String contentHash) throws IOException;
+
+    /**
+     * Deletes the manifest of a document no longer in any library, and
+     * releases the chunks that only it used.
+     */
+    void deleteManifest(String contentHash) throws IOException;
+}
@@ -0,0 +1,259 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps document content in the {@link BlobStore}, so a document can be
+ * opened on any device that sees its metadata, not just the one that
+ * imported it.
+ *
+ * Documents are uploaded after import and downloaded when opened where
+ * their file is missing. Downloads are written encrypted like any other
+ * document, to a partial file that an interrupted download resumes from.
+ * Content no document has any more is released from the store.
+ *
+ * The app has no server to talk to yet, so the store is a
+ * {@link LocalBlobStore} on the device, encrypted like the documents.
+ * Everything above the store works as it will against a remote one.
+ */
+public class BlobSync {
+
+    /**
+     * Receives the outcome of a download on the main thread.
+     */
+    public interface DownloadListener {
+        void onProgress(long downloaded, long total);
+
+        void onDownloaded(File file);
+
+        void onFailed(IOException error);
+    }
+
+    private static final String TAG = "BlobSync";
+    // Chunks in flight per transfer; enough to keep a link busy despite request latency
+    private static final int PARALLEL_CHUNKS = 4;
+    // Chunk buffers per transfer, which bound its memory to this many chunks
+    private static final int CHUNK_BUFFERS = PARALLEL_CHUNKS * 2;
+
+    private static BlobSync instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final File downloadDirectory;
+    private final BlobStore store;
+    private final BlobTransfer transfer;
+    // Uploads and releases wait behind each other; a download never waits for either
+    private final ExecutorService uploads = Executors.newSingleThreadExecutor();
+    private final ExecutorService downloads = Executors.newSingleThreadExecutor();
+    // Content already uploaded or queued in this process, by content hash
+    private final Set<String> uploadedHashes = new HashSet<>();
+    // Listeners of downloads in progress, by content hash
+    private final Map<String, List<DownloadListener>> activeDownloads = new HashMap<>();
+
+    public static synchronized BlobSync get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            // On the device until a remote store exists
+            LocalBlobStore store = new LocalBlobStore(new File(appContext.getFilesDir(), "blobstore"));
+            instance = new BlobSync(appContext, store);
+            // Earlier versions stored chunks in plaintext
+            instance.uploads.execute(store::encryptExisting);
+        }
+        return instance;
+    }
+
+    private BlobSync(Context context, BlobStore store) {
+        downloadDirectory = new File(context.getFilesDir(), "downloads");
+        this.store = store;
+        transfer = new BlobTransfer(store, Executors.newFixedThreadPool(PARALLEL_CHUNKS), CHUNK_BUFFERS);
+    }
+
+    /**
+     * Uploads a document's content unless it was uploaded before. Call it
+     * on the main thread.
+     */
+    public void upload(Document document) {
+        String contentHash = document.getContentHash();
+        String localPath = document.getLocalPath();
+        if (contentHash == null || localPath == null || !uploadedHashes.add(contentHash)) {
+            return;
+        }
+
+        uploads.execute(() -> {
+            File file = new File(localPath);
+            if (!file.exists()) {
+                return;
+            }
+            try (SeekableBlob source = DocumentStore.open(file)) {
+                transfer.upload(source, contentHash, (uploaded, total) -> { });
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to upload " + document.getFileName(), e);
+                // Retried the next time the document is seen
+                mainHandler.post(() -> uploadedHashes.remove(contentHash));
+            }
+        });
+    }
+
+    /**
+     * Drops content no document has any more from the store, along with its
+     * downloaded copy. Runs behind queued uploads, never alongside one, so
+     * an upload cannot count on a chunk that is being released. Call it on
+     * the main thread.
+     */
+    public void release(String contentHash) {
+        if (contentHash == null) {
+            return;
+        }
+        uploadedHashes.remove(contentHash);
+        File download = getDownloadLocation(contentHash);
+        uploads.execute(() -> {
+            try {
+                store.deleteManifest(contentHash);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to release " + contentHash, e);
+            }
+            if (download.exists() && !download.delete()) {
+                Log.w(TAG, "Failed to delete " + download);
+            }
+        });
+    }
+
+    /**
+     * Returns the downloaded copy of a document, or null if it has not been
+     * downloaded.
+     */
+    public File getDownloadedFile(Document document) {
+        if (document.getContentHash() == null) {
+            return null;
+        }
+        File file = getDownloadLocation(document.getContentHash());
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Returns where content is put when downloaded, whether or not it is
+     * there yet.
+     */
+    public File getDownloadLocation(String contentHash) {
+        return new File(downloadDirectory, contentHash);
+    }
+
+    /**
+     * Whether content was completely uploaded, so the local copy can be
+     * dropped and downloaded again. Does I/O, so call it off the main thread.
+     */
+    public boolean isStored(String contentHash) {
+        if (contentHash == null) {
+            return false;
+        }
+        try {
+            return store.getManifest(contentHash) != null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to look up " + contentHash, e);
+            return false;
+        }
+    }
+
+    /**
+     * Downloads a document's content. Concurrent requests for the same
+     * content share one download. Call it on the main thread.
+     */
+    public void download(Document document, DownloadListener listener) {
+        String contentHash = document.getContentHash();
+        if (contentHash == null) {
+            listener.onFailed(new IOException("The document's content is unknown"));
+            return;
+        }
+        List<DownloadListener> listeners = activeDownloads.get(contentHash);
+        if (listeners != null) {
+            listeners.add(listener);
+            return;
+        }
+        listeners = new ArrayList<>();
+        listeners.add(listener);
+        activeDownloads.put(contentHash, listeners);
+
+        downloads.execute(() -> {
+            try {
+                File file = downloadOffMainThread(contentHash);
+                mainHandler.post(() -> {
+                    for (DownloadListener each : activeDownloads.remove(contentHash)) {
+                        each.onDownloaded(file);
+                    }
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to download " + document.getFileName(), e);
+                mainHandler.post(() -> {
+                    for (DownloadListener each : activeDownloads.remove(contentHash)) {
+                        each.onFailed(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private File downloadOffMainThread(String contentHash) throws IOException {
+        File file = getDownloadLocation(contentHash);
+        if (file.isFile()) {
+            return file;
+        }
+        BlobManifest manifest = store.getManifest(contentHash);
+        if (manifest == null) {
+            throw new IOException("The document was never uploaded");
+        }
+        if (!downloadDirectory.isDirectory() && !downloadDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + downloadDirectory);
+        }
+
+        // Picks up where an interrupted download stopped
+        File partFile = new File(downloadDirectory, contentHash + ".part");
+        EncryptedBlobWriter out = null;
+        if (partFile.isFile()) {
+            try {
+                out = EncryptedBlobWriter.resume(partFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Restarting download of " + contentHash, e);
+            }
+        }
+        if (out == null) {
+            out = EncryptedBlobWriter.create(partFile);
+        }
+
+        try {
+            transfer.download(manifest, out.getContentLength(), out,
+                    (downloaded, total) -> postProgress(contentHash, downloaded, total));
+        } catch (IOException e) {
+            // Keeps the complete chunks for the next attempt to resume from
+            out.abandon();
+            throw e;
+        }
+        out.close();
+        if (!partFile.renameTo(file)) {
+            throw new IOException("Failed to save download " + contentHash);
+        }
+        return file;
+    }
+
+    private void postProgress(String contentHash, long downloaded, long total) {
+        mainHandler.post(() -> {
+            List<DownloadListener> listeners = activeDownloads.get(contentHash);
+            if (listeners != null) {
+                for (DownloadListener listener : listeners) {
+                    listener.onProgress(downloaded, total);
+                }
+            }
+        });
+    }
+}
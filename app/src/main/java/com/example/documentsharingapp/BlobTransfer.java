@@ -0,0 +1,259 @@
+package com.example.documentsharingapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Moves document content to and from a {@link BlobStore} in chunks.
+ *
+ * Several chunks are in flight at once so that a single slow request does
+ * not idle the link, but only a fixed number of chunk buffers exist per
+ * transfer: the reader of an upload waits for a free buffer, and a
+ * download fetches at most that many chunks ahead of the writer. Memory
+ * use is therefore bounded by the number of buffers, whatever the size
+ * of the document.
+ *
+ * Uploads are deltas. Content is split with {@link ContentChunker}, so a
+ * re-imported document after an edit mostly yields chunks the store has
+ * already; the store is asked which chunks it lacks, a batch at a time,
+ * and only those are read again and sent. The same makes an interrupted
+ * upload resume where it stopped. Downloads continue from any content
+ * offset.
+ */
+public class BlobTransfer {
+
+    /**
+     * Receives progress from the transferring thread.
+     */
+    public interface ProgressListener {
+        void onProgress(long transferred, long total);
+    }
+
+    // Chunk hashes asked about per request to the store
+    private static final int NEGOTIATION_BATCH = 512;
+
+    private final BlobStore store;
+    private final ExecutorService workers;
+    private final int buffers;
+
+    /**
+     * @param workers Runs the chunk requests; its thread count bounds how many are in flight.
+     * @param buffers How many chunks one transfer may hold in memory at once.
+     */
+    public BlobTransfer(BlobStore store, ExecutorService workers, int buffers) {
+        this.store = store;
+        this.workers = workers;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Uploads whatever chunks of the content the store lacks, then the
+     * manifest, unless the manifest is there already. Reads the content
+     * twice: once to find and hash the chunks, then for the missing ones.
+     * @param contentHash The hash of the whole content, which keys the manifest.
+     * @param listener Told about the bytes of missing chunks sent.
+     */
+    public BlobManifest upload(SeekableBlob source, String contentHash, ProgressListener listener) throws IOException {
+        BlobManifest existing = store.getManifest(contentHash);
+        if (existing != null) {
+            return existing;
+        }
+
+        // The stream is not closed here; the caller owns the source
+        List<ContentChunker.Chunk> chunks = ContentChunker.split(new BlobInputStream(source));
+        List<String> chunkHashes = new ArrayList<>(chunks.size());
+        int[] chunkLengths = new int[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkHashes.add(chunks.get(i).hash);
+            chunkLengths[i] = chunks.get(i).length;
+        }
+
+        Set<String> missing = findMissing(chunkHashes);
+        List<ContentChunker.Chunk> toSend = new ArrayList<>(missing.size());
+        long total = 0;
+        for (ContentChunker.Chunk chunk : chunks) {
+            // A chunk repeated within the content is sent once
+            if (missing.remove(chunk.hash)) {
+                toSend.add(chunk);
+                total += chunk.length;
+            }
+        }
+        send(source, toSend, total, listener);
+
+        BlobManifest manifest = new BlobManifest(source.getSize(), chunkHashes, chunkLengths);
+        store.putManifest(contentHash, manifest);
+        return manifest;
+    }
+
+    private Set<String> findMissing(List<String> chunkHashes) throws IOException {
+        Set<String> missing = new HashSet<>();
+        for (int start = 0; start < chunkHashes.size(); start += NEGOTIATION_BATCH) {
+            int end = Math.min(chunkHashes.size(), start + NEGOTIATION_BATCH);
+            missing.addAll(store.findMissing(chunkHashes.subList(start, end)));
+        }
+        return missing;
+    }
+
+    private void send(SeekableBlob source, List<ContentChunker.Chunk> chunks, long total, ProgressListener listener)
+            throws IOException {
+        BlockingQueue<byte[]> freeBuffers = newBuffers(ContentChunker.MAX_SIZE);
+        Deque<Future<Integer>> inFlight = new ArrayDeque<>();
+        long sent = 0;
+
+        try {
+            for (ContentChunker.Chunk chunk : chunks) {
+                // Blocks while every buffer is in flight, which is what bounds memory
+                byte[] buffer = freeBuffers.take();
+                readFully(source, chunk.offset, buffer, chunk.length);
+
+                inFlight.add(workers.submit(() -> {
+                    try {
+                        if (!ContentHash.of(buffer, 0, chunk.length).equals(chunk.hash)) {
+                            throw new IOException("The document changed while it was uploaded");
+                        }
+                        store.putChunk(chunk.hash, buffer, chunk.length);
+                        return chunk.length;
+                    } finally {
+                        freeBuffers.add(buffer);
+                    }
+                }));
+
+                // Collect finished chunks as we go, so a failure stops the upload early
+                while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                    sent += await(inFlight.poll());
+                    listener.onProgress(sent, total);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                sent += await(inFlight.poll());
+                listener.onProgress(sent, total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        } finally {
+            for (Future<Integer> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Writes a document's content from the given offset on, in order.
+     * Every chunk is checked against its hash before it is written.
+     * @param from Where to start, e.g. how much an interrupted download already wrote.
+     */
+    public void download(BlobManifest manifest, long from, OutputStream out, ProgressListener listener)
+            throws IOException {
+        List<String> chunkHashes = manifest.getChunkHashes();
+        int next = 0;
+        long skip = from;
+        while (next < manifest.getChunkCount() && skip >= manifest.getChunkLength(next)) {
+            skip -= manifest.getChunkLength(next);
+            next++;
+        }
+        BlockingQueue<byte[]> freeBuffers = newBuffers(manifest.getMaxChunkLength());
+        Deque<Future<ChunkData>> ahead = new ArrayDeque<>();
+        long written = from;
+
+        try {
+            while (next < chunkHashes.size() || !ahead.isEmpty()) {
+                // Keep every free buffer busy fetching the chunks that come next
+                byte[] buffer;
+                while (next < chunkHashes.size() && (buffer = freeBuffers.poll()) != null) {
+                    ahead.add(workers.submit(new FetchChunk(chunkHashes.get(next), next, buffer)));
+                    next++;
+                }
+
+                ChunkData chunk = await(ahead.poll());
+                out.write(chunk.buffer, (int) skip, chunk.length - (int) skip);
+                written += chunk.length - skip;
+                skip = 0;
+                freeBuffers.add(chunk.buffer);
+                listener.onProgress(written, manifest.getSize());
+            }
+        } finally {
+            for (Future<ChunkData> future : ahead) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static final class ChunkData {
+        final byte[] buffer;
+        final int length;
+
+        ChunkData(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+
+    private final class FetchChunk implements Callable<ChunkData> {
+        private final String chunkHash;
+        private final int index;
+        private final byte[] buffer;
+
+        FetchChunk(String chunkHash, int index, byte[] buffer) {
+            this.chunkHash = chunkHash;
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public ChunkData call() throws IOException {
+            int length = store.getChunk(chunkHash, buffer);
+            if (!ContentHash.of(buffer, 0, length).equals(chunkHash)) {
+                throw new IOException("Chunk " + index + " does not match its hash");
+            }
+            return new ChunkData(buffer, length);
+        }
+    }
+
+    private BlockingQueue<byte[]> newBuffers(int chunkSize) {
+        BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            queue.add(new byte[chunkSize]);
+        }
+        return queue;
+    }
+
+    private static void readFully(SeekableBlob source, long offset, byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            int read = source.read(offset + filled, buffer, filled, length - filled);
+            if (read < 0) {
+                throw new IOException("Content ended at " + (offset + filled));
+            }
+            filled += read;
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfer interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Chunk transfer failed", cause);
+        }
+    }
+}
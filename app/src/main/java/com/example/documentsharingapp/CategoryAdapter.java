@@ -0,0 +1,76 @@
+package com.example.documentsharingapp;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CategoryAdapter extends RecyclerView.Adapter<CategoryAdapter.ViewHolder> {
+
+    private List<LibraryStats.Bucket> buckets = new ArrayList<>();
+
+    public void setBuckets(List<LibraryStats.Bucket> buckets) {
+        this.buckets = buckets;
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_category, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(buckets.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return buckets.size();
+    }
+
+    public class ViewHolder extends RecyclerView.ViewHolder {
+        private ImageView categoryIcon;
+        private TextView categoryName;
+        private TextView categoryCount;
+        private TextView categorySize;
+        private TextView categoryLatest;
+
+        public ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            categoryIcon = itemView.findViewById(R.id.categoryIcon);
+            categoryName = itemView.findViewById(R.id.categoryName);
+            categoryCount = itemView.findViewById(R.id.categoryCount);
+            categorySize = itemView.findViewById(R.id.categorySize);
+            categoryLatest = itemView.findViewById(R.id.categoryLatest);
+        }
+
+        public void bind(LibraryStats.Bucket bucket) {
+            if (bucket.getKind() == LibraryStats.Kind.TYPE) {
+                categoryName.setText(bucket.getName());
+                categoryIcon.setImageResource(bucket.getCategory().getIconResource());
+            } else if (bucket.getKind() == LibraryStats.Kind.TAG) {
+                categoryName.setText("#" + bucket.getName());
+                categoryIcon.setImageResource(R.drawable.ic_tag);
+            } else {
+                categoryName.setText(bucket.getName());
+                categoryIcon.setImageResource(R.drawable.ic_folder);
+            }
+
+            int count = bucket.getCount();
+            categoryCount.setText(count + (count == 1 ? " document" : " documents"));
+
+            double sizeMB = bucket.getBytes() / (1024.0 * 1024.0);
+            categorySize.setText(String.format("%.1f MB", sizeMB));
+
+            categoryLatest.setText("Latest: " + bucket.getLatestName());
+        }
+    }
+}
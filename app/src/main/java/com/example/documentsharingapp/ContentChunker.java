@@ -0,0 +1,105 @@
+package com.example.documentsharingapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits content into chunks at positions chosen by the content itself.
+ *
+ * A rolling Gear hash is computed over the bytes and a chunk ends where it
+ * matches a bit mask, so boundaries depend only on the few dozen bytes
+ * before them. Inserting or deleting bytes in an edited document changes
+ * the chunks around the edit while every other chunk comes out exactly as
+ * before, with the same hash, even though its offset moved. Fixed-size
+ * chunks would all shift and all differ.
+ *
+ * Boundaries are normalized (FastCDC): a stricter mask before the average
+ * size and a looser one after it keep chunk sizes close to the average.
+ */
+public final class ContentChunker {
+
+    /**
+     * A chunk of content and its SHA-256 hash.
+     */
+    public static final class Chunk {
+        final long offset;
+        final int length;
+        final String hash;
+
+        Chunk(long offset, int length, String hash) {
+            this.offset = offset;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    // Boundaries must come out the same on every device and in every version,
+    // so none of these values, nor the table below, may ever change
+    public static final int MIN_SIZE = 64 * 1024;
+    public static final int AVERAGE_SIZE = 256 * 1024;
+    public static final int MAX_SIZE = 1024 * 1024;
+    // 20 and 16 bits around the 18 bits of the average size, taken from the top
+    // of the hash, which depends on the most bytes
+    private static final long STRICT_MASK = 0xFFFFF00000000000L;
+    private static final long LOOSE_MASK = 0xFFFF000000000000L;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64 from a fixed seed
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < GEAR.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private ContentChunker() {
+    }
+
+    /**
+     * Reads content to its end and returns its chunks in order. Only a read
+     * buffer is held in memory, whatever the size of the content.
+     */
+    public static List<Chunk> split(InputStream in) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        MessageDigest digest = ContentHash.newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        long chunkOffset = 0;
+        int chunkLength = 0;
+        long hash = 0;
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            int spanStart = 0;
+            for (int i = 0; i < read; i++) {
+                chunkLength++;
+                // No boundary can fall below the minimum, so those bytes are not hashed
+                if (chunkLength <= MIN_SIZE) {
+                    continue;
+                }
+                hash = (hash << 1) + GEAR[buffer[i] & 0xFF];
+                long mask = chunkLength < AVERAGE_SIZE ? STRICT_MASK : LOOSE_MASK;
+                if ((hash & mask) == 0 || chunkLength == MAX_SIZE) {
+                    digest.update(buffer, spanStart, i + 1 - spanStart);
+                    chunks.add(new Chunk(chunkOffset, chunkLength, ContentHash.toHex(digest.digest())));
+                    chunkOffset += chunkLength;
+                    chunkLength = 0;
+                    hash = 0;
+                    spanStart = i + 1;
+                }
+            }
+            digest.update(buffer, spanStart, read - spanStart);
+        }
+        if (chunkLength > 0) {
+            chunks.add(new Chunk(chunkOffset, chunkLength, ContentHash.toHex(digest.digest())));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.documentsharingapp;
+
+import android.os.Process;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs decode work in priority order on a pool capped at the core count, or
+ * at an explicit thread count.
+ *
+ * Every task belongs to an owner, usually the view it will fill. Submitting
+ * a new task for an owner cancels its previous one, and cancelling an owner
+ * (when its row is recycled) removes the task from the queue before it
+ * costs any work. Lower priority values run first; ties run in submission
+ * order.
+ */
+public class DecodeScheduler {
+
+    // Rows on screen right now
+    public static final int PRIORITY_VISIBLE = 0;
+    // Rows just ahead of the viewport; the distance from it is added on top
+    public static final int PRIORITY_PREFETCH = 1;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+
+    // Guarded by this
+    private final Map<Object, Task> tasksByOwner = new HashMap<>();
+
+    public DecodeScheduler(String threadName) {
+        this(threadName, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scheduler with a fixed number of threads, e.g. one for
+     * decoders that cannot be used concurrently.
+     */
+    public DecodeScheduler(String threadName, int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue,
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, threadName));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues work for an owner, replacing any work it still has queued.
+     */
+    public void submit(Object owner, int priority, Runnable work) {
+        Task task = new Task(owner, priority, work);
+        synchronized (this) {
+            Task previous = tasksByOwner.put(owner, task);
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Drops queued work of an owner. Work that already started runs to
+     * completion.
+     */
+    public void cancel(Object owner) {
+        Task task;
+        synchronized (this) {
+            task = tasksByOwner.remove(owner);
+        }
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private synchronized void finished(Task task) {
+        if (tasksByOwner.get(task.owner) == task) {
+            tasksByOwner.remove(task.owner);
+        }
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final Object owner;
+        final int priority;
+        final long sequence = SEQUENCE.getAndIncrement();
+        final Runnable work;
+        volatile boolean cancelled;
+
+        Task(Object owner, int priority, Runnable work) {
+            this.owner = owner;
+            this.priority = priority;
+            this.work = work;
+        }
+
+        void cancel() {
+            cancelled = true;
+            queue.remove(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    work.run();
+                }
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
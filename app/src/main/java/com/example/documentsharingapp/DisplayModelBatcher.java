@@ -0,0 +1,95 @@
+package com.example.documentsharingapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Collects documents from database events and hands them back in batches
+ * once their {@link DocumentDisplayModel}s have been built off the main
+ * thread. Building a model reads the size of documents that never had one
+ * recorded, so {@link Document#resolveSize()} is complete for every document
+ * handed back.
+ *
+ * Documents stay pending while their batch is being prepared. A document
+ * that is replaced or removed in the meantime is not handed back, so a slow
+ * batch can never bring back stale or deleted data. All methods and
+ * callbacks run on the main thread.
+ */
+public class DisplayModelBatcher {
+
+    public interface Listener {
+        void onDocumentsReady(List<Document> documents);
+    }
+
+    // Shared by all screens; batches are small and ordering between them does not matter
+    private static final ExecutorService PREPARER = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Document> pending = new LinkedHashMap<>();
+    private final Listener listener;
+    private boolean preparing;
+    // Bumped by clear(), so a batch that was in flight is dropped
+    private int generation;
+
+    public DisplayModelBatcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void put(Document document) {
+        pending.put(document.getKey(), document);
+    }
+
+    public void remove(String documentKey) {
+        pending.remove(documentKey);
+    }
+
+    public void clear() {
+        pending.clear();
+        preparing = false;
+        generation++;
+    }
+
+    /**
+     * Starts preparing everything pending, unless a batch is already being
+     * prepared; what arrives meanwhile goes out with the next flush.
+     */
+    public void flush() {
+        if (preparing || pending.isEmpty()) {
+            return;
+        }
+        preparing = true;
+        List<Document> batch = new ArrayList<>(pending.values());
+        int batchGeneration = generation;
+
+        PREPARER.execute(() -> {
+            for (Document document : batch) {
+                if (document.getDisplayModel() == null) {
+                    document.setDisplayModel(DocumentDisplayModel.of(document));
+                }
+            }
+            mainHandler.post(() -> {
+                if (batchGeneration != generation) {
+                    return;
+                }
+                preparing = false;
+                List<Document> ready = new ArrayList<>(batch.size());
+                for (Document document : batch) {
+                    // Skip documents replaced or removed while this batch was prepared
+                    if (pending.get(document.getKey()) == document) {
+                        pending.remove(document.getKey());
+                        ready.add(document);
+                    }
+                }
+                listener.onDocumentsReady(ready);
+                // Documents that arrived while this batch was prepared
+                flush();
+            });
+        });
+    }
+}
@@ -1,9 +1,24 @@
 package com.example.documentsharingapp;
 
+import com.google.firebase.database.Exclude;
+import java.util.HashMap;
+import java.util.Map;
+
 public class Document {
+    private String key;
     private String fileName;
     private String localPath;
     private long timestamp;
+    private long size;
+    private String folder;
+    private String contentHash;
+    private int fileType;
+    private Map<String, Boolean> sharedWith = new HashMap<>();
+    private String ownerUid;
+    private String ownerEmail;
+    private FileType resolvedType;
+    private Map<String, Boolean> tags = new HashMap<>();
+    private DocumentDisplayModel displayModel;
 
     // Required empty constructor for Firebase
     public Document() {
@@ -15,12 +30,41 @@ public class Document {
         this.timestamp = timestamp;
     }
 
+    /**
+     * The push key of this document under documents/{uid}. Not stored in the
+     * document itself; it is filled in from the snapshot after deserializing.
+     */
+    @Exclude
+    public String getKey() {
+        return key;
+    }
+
+    @Exclude
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * The formatted labels rows show for this document, or null until they
+     * have been prepared. Never stored.
+     */
+    @Exclude
+    public DocumentDisplayModel getDisplayModel() {
+        return displayModel;
+    }
+
+    @Exclude
+    public void setDisplayModel(DocumentDisplayModel displayModel) {
+        this.displayModel = displayModel;
+    }
+
     public String getFileName() {
         return fileName;
     }
 
     public void setFileName(String fileName) {
         this.fileName = fileName;
+        resolvedType = null;
     }
 
     public String getLocalPath() {
@@ -38,4 +82,122 @@ public class Document {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
-}
\ No newline at end of file
+
+    /**
+     * File size in bytes as recorded at import. Documents saved before the
+     * size was recorded report 0.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Size in bytes. Documents imported before the size was recorded take it
+     * from their display model, which reads it from the file off the main
+     * thread; until the model is built it is 0. Never touches the disk.
+     */
+    @Exclude
+    public long resolveSize() {
+        if (size > 0 || displayModel == null) {
+            return size;
+        }
+        return displayModel.getSize();
+    }
+
+    /**
+     * Name of the folder the document is filed under, or null when it is not
+     * in a folder.
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    public void setFolder(String folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Tags of the document, stored as a set of tag names mapped to true so
+     * that single tags can be added or removed with one path update.
+     */
+    public Map<String, Boolean> getTags() {
+        return tags;
+    }
+
+    public void setTags(Map<String, Boolean> tags) {
+        this.tags = tags != null ? tags : new HashMap<>();
+    }
+
+    /**
+     * SHA-256 of the document's content as hex, recorded at import. Null for
+     * documents imported before hashes were recorded.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Users this document is shared with, as a set of uids mapped to true.
+     */
+    public Map<String, Boolean> getSharedWith() {
+        return sharedWith;
+    }
+
+    public void setSharedWith(Map<String, Boolean> sharedWith) {
+        this.sharedWith = sharedWith != null ? sharedWith : new HashMap<>();
+    }
+
+    /**
+     * Uid of the user who shared the document. Only set on entries of a
+     * share inbox; null for the user's own documents.
+     */
+    public String getOwnerUid() {
+        return ownerUid;
+    }
+
+    public void setOwnerUid(String ownerUid) {
+        this.ownerUid = ownerUid;
+    }
+
+    public String getOwnerEmail() {
+        return ownerEmail;
+    }
+
+    public void setOwnerEmail(String ownerEmail) {
+        this.ownerEmail = ownerEmail;
+    }
+
+    /**
+     * Code of the {@link FileType} sniffed from the content at import, or
+     * {@link FileType#NOT_RECORDED} for older documents.
+     */
+    public int getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(int fileType) {
+        this.fileType = fileType;
+        resolvedType = null;
+    }
+
+    /**
+     * The type of the document: the recorded one, or a guess from the file
+     * name for documents imported before types were recorded.
+     */
+    @Exclude
+    public FileType resolveType() {
+        if (resolvedType == null) {
+            FileType recorded = FileType.fromCode(fileType);
+            resolvedType = recorded != null ? recorded : FileType.fromExtension(fileName);
+        }
+        return resolvedType;
+    }
+}
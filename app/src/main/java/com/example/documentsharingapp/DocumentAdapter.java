@@ -1,26 +1,146 @@
 package com.example.documentsharingapp;
 
-import android.content.Intent;
-import android.net.Uri;
+import android.content.Context;
+import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
+import android.widget.PopupMenu;
 import android.widget.TextView;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
-import androidx.core.content.FileProvider;
+import androidx.appcompat.app.AlertDialog;
+import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.RecyclerView;
-import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
-public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.ViewHolder> {
+public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.ViewHolder>
+        implements ViewportPrefetcher.DocumentSource {
+
+    /**
+     * Receives actions picked from a row's options menu.
+     */
+    public interface OnDocumentOptionListener {
+        void onShare(Document document);
+
+        void onMoveToFolder(Document document);
+
+        void onEditTags(Document document);
+
+        void onDelete(Document document);
+    }
+
+    /**
+     * Told whenever documents are selected or deselected.
+     */
+    public interface OnSelectionChangeListener {
+        void onSelectionChanged(int selectedCount);
+    }
+
+    private static final int SELECTED_COLOR = 0xFFE3EDE3;
 
     private List<Document> documents;
+    private OnDocumentOptionListener optionListener;
+    private OnSelectionChangeListener selectionListener;
+    private boolean openable = true;
+    // Keys rather than documents, since the list is rebuilt with new instances on every change
+    private final Set<String> selectedKeys = new LinkedHashSet<>();
 
     public DocumentAdapter(List<Document> documents) {
         this.documents = documents;
     }
 
+    public void setOnDocumentOptionListener(OnDocumentOptionListener optionListener) {
+        this.optionListener = optionListener;
+    }
+
+    /**
+     * Whether tapping a row opens its document. Lists of documents whose
+     * content is not on this device turn it off.
+     */
+    public void setOpenable(boolean openable) {
+        this.openable = openable;
+    }
+
+    /**
+     * Enables selecting rows with a long press. While anything is selected,
+     * a tap selects or deselects instead of opening.
+     */
+    public void setOnSelectionChangeListener(OnSelectionChangeListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+
+    public boolean isSelecting() {
+        return !selectedKeys.isEmpty();
+    }
+
+    /**
+     * Returns the selected documents in list order.
+     */
+    public List<Document> getSelectedDocuments() {
+        List<Document> selected = new ArrayList<>(selectedKeys.size());
+        for (Document document : documents) {
+            if (selectedKeys.contains(document.getKey())) {
+                selected.add(document);
+            }
+        }
+        return selected;
+    }
+
+    public void clearSelection() {
+        if (selectedKeys.isEmpty()) {
+            return;
+        }
+        selectedKeys.clear();
+        notifyDataSetChanged();
+        selectionListener.onSelectionChanged(0);
+    }
+
+    /**
+     * Drops selected documents that are no longer listed, e.g. after they
+     * were deleted or filtered out. Call it after changing the list and
+     * before notifying the adapter.
+     */
+    public void retainListedSelection() {
+        if (selectedKeys.isEmpty()) {
+            return;
+        }
+        Set<String> listedKeys = new LinkedHashSet<>();
+        for (Document document : documents) {
+            listedKeys.add(document.getKey());
+        }
+        boolean changed = false;
+        for (Iterator<String> it = selectedKeys.iterator(); it.hasNext(); ) {
+            if (!listedKeys.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            selectionListener.onSelectionChanged(selectedKeys.size());
+        }
+    }
+
+    private void toggleSelection(int position) {
+        boolean wasSelecting = isSelecting();
+        String key = documents.get(position).getKey();
+        if (!selectedKeys.remove(key)) {
+            selectedKeys.add(key);
+        }
+        if (wasSelecting != isSelecting()) {
+            // Every row's options button appears or disappears
+            notifyDataSetChanged();
+        } else {
+            notifyItemChanged(position);
+        }
+        selectionListener.onSelectionChanged(selectedKeys.size());
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -39,12 +159,25 @@ public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.ViewHo
         return documents.size();
     }
 
-    public class ViewHolder extends RecyclerView.ViewHolder {
+    @Override
+    public Document getDocument(int position) {
+        return documents.get(position);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // The row no longer shows this document, so its decode is not needed
+        ThumbnailLoader.get(holder.itemView.getContext()).cancel(holder.docIcon);
+    }
+
+    public class ViewHolder extends RecyclerView.ViewHolder implements DocumentDisplayModel.Row {
         private ImageView docIcon;
         private TextView docName;
         private TextView docDate;
         private TextView docSize;
+        private TextView docProblem;
         private ImageView moreOptions;
+        private Document document;
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -52,107 +185,125 @@ public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.ViewHo
             docName = itemView.findViewById(R.id.docName);
             docDate = itemView.findViewById(R.id.docDate);
             docSize = itemView.findViewById(R.id.docSize);
+            docProblem = itemView.findViewById(R.id.docProblem);
             moreOptions = itemView.findViewById(R.id.moreOptions);
+
+            // Set once and pointed at whichever document the row shows
+            itemView.setOnClickListener(v -> {
+                if (isSelecting()) {
+                    toggleAt(getAdapterPosition());
+                } else if (openable) {
+                    openFile(document);
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                if (selectionListener == null) {
+                    return false;
+                }
+                toggleAt(getAdapterPosition());
+                return true;
+            });
+            moreOptions.setOnClickListener(v -> showOptionsMenu(document));
         }
 
         public void bind(Document document) {
-            // Set document name
-            docName.setText(document.getFileName());
-
-            // Set document date
-            long timestamp = document.getTimestamp();
-            String dateStr = new java.text.SimpleDateFormat("MMM dd, yyyy").format(new java.util.Date(timestamp));
-            docDate.setText(dateStr);
-
-            // Calculate and set actual file size
-            File file = new File(document.getLocalPath());
-            if (file.exists()) {
-                double sizeMB = file.length() / (1024.0 * 1024.0);
-                docSize.setText(String.format("%.1f MB", sizeMB));
-            } else {
-                docSize.setText("Unknown");
+            this.document = document;
+
+            // Labels and icon were prepared when the document changed
+            DocumentDisplayModel.forDocument(document).bindTo(this);
+            // Lists of documents the user does not own have no actions
+            moreOptions.setVisibility(optionListener != null && !isSelecting() ? View.VISIBLE : View.GONE);
+            ((CardView) itemView).setCardBackgroundColor(
+                    selectedKeys.contains(document.getKey()) ? SELECTED_COLOR : Color.WHITE);
+            // Found by the background scrub, so a damaged file is known before it is opened
+            IntegrityScrubber.Problem problem = IntegrityScrubber.get(itemView.getContext()).getProblem(document);
+            docProblem.setVisibility(problem != null ? View.VISIBLE : View.GONE);
+            if (problem != null) {
+                docProblem.setText(problem.getLabel());
             }
 
-            // Set document icon based on file type
-            String fileName = document.getFileName().toLowerCase();
-            if (fileName.endsWith(".pdf")) {
-                docIcon.setImageResource(R.drawable.ic_pdf);
-            } else if (fileName.endsWith(".doc") || fileName.endsWith(".docx")) {
-                docIcon.setImageResource(R.drawable.ic_doc);
-            } else if (fileName.endsWith(".xls") || fileName.endsWith(".xlsx")) {
-                docIcon.setImageResource(R.drawable.ic_xls);
-            } else if (fileName.endsWith(".ppt") || fileName.endsWith(".pptx")) {
-                docIcon.setImageResource(R.drawable.ic_ppt);
-            } else if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ||
-                    fileName.endsWith(".png") || fileName.endsWith(".gif")) {
-                docIcon.setImageResource(R.drawable.ic_img);
-            } else {
-                docIcon.setImageResource(R.drawable.ic_file);
+            // Replace the icon with a preview once one is available
+            ThumbnailLoader.get(itemView.getContext()).load(document, docIcon);
+        }
+
+        @Override
+        public void showName(String name) {
+            docName.setText(name);
+        }
+
+        @Override
+        public void showDate(String dateLabel) {
+            docDate.setText(dateLabel);
+        }
+
+        @Override
+        public void showSize(String sizeLabel) {
+            docSize.setText(sizeLabel);
+        }
+
+        @Override
+        public void showIcon(int iconResource) {
+            docIcon.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            docIcon.setImageResource(iconResource);
+        }
+
+        private void toggleAt(int position) {
+            if (position != RecyclerView.NO_POSITION) {
+                toggleSelection(position);
             }
+        }
 
-            // Set click listener to open the file
-            itemView.setOnClickListener(v -> openFile(document));
+        private void showOptionsMenu(Document document) {
+            PopupMenu popup = new PopupMenu(itemView.getContext(), moreOptions);
+            popup.getMenuInflater().inflate(R.menu.document_options_menu, popup.getMenu());
+            popup.getMenu().findItem(R.id.findSimilar).setVisible(SimilarImageIndex.isImage(document));
 
-            // Set more options click listener
-            moreOptions.setOnClickListener(v -> {
-                // Show options menu (share, delete, etc.)
+            popup.setOnMenuItemClickListener(item -> {
+                int itemId = item.getItemId();
+                if (itemId == R.id.findSimilar) {
+                    showSimilarImages(document);
+                    return true;
+                }
+                if (optionListener == null) {
+                    return false;
+                }
+                if (itemId == R.id.shareDocument) {
+                    optionListener.onShare(document);
+                } else if (itemId == R.id.moveToFolder) {
+                    optionListener.onMoveToFolder(document);
+                } else if (itemId == R.id.editTags) {
+                    optionListener.onEditTags(document);
+                } else if (itemId == R.id.deleteDocument) {
+                    optionListener.onDelete(document);
+                } else {
+                    return false;
+                }
+                return true;
             });
+            popup.show();
         }
 
-        private void openFile(Document document) {
-            File file = new File(document.getLocalPath());
-            if (!file.exists()) {
-                // Handle case where file doesn't exist
+        private void showSimilarImages(Document document) {
+            Context context = itemView.getContext();
+            List<Document> similar = SimilarImageIndex.get(context)
+                    .findSimilar(document, SimilarImageIndex.DEFAULT_RADIUS);
+            if (similar.isEmpty()) {
+                Toast.makeText(context, "No similar images found", Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            // Get URI using FileProvider
-            Uri fileUri = FileProvider.getUriForFile(
-                    itemView.getContext(),
-                    "com.example.documentsharingapp.fileprovider",
-                    file
-            );
-
-            // Determine MIME type based on file extension
-            String mimeType = getMimeType(document.getFileName().toLowerCase());
-
-            // Create intent to open the file
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-            intent.setDataAndType(fileUri, mimeType);
-            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-            try {
-                itemView.getContext().startActivity(intent);
-            } catch (Exception e) {
-                // Handle case where no app can open the file
-                e.printStackTrace();
+            CharSequence[] names = new CharSequence[similar.size()];
+            for (int i = 0; i < similar.size(); i++) {
+                names[i] = similar.get(i).getFileName();
             }
+            new AlertDialog.Builder(context)
+                    .setTitle("Similar images")
+                    .setItems(names, (dialog, which) -> DocumentOpener.open(context, similar.get(which)))
+                    .show();
         }
 
-        private String getMimeType(String fileName) {
-            if (fileName.endsWith(".pdf")) {
-                return "application/pdf";
-            } else if (fileName.endsWith(".doc")) {
-                return "application/msword";
-            } else if (fileName.endsWith(".docx")) {
-                return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
-            } else if (fileName.endsWith(".xls")) {
-                return "application/vnd.ms-excel";
-            } else if (fileName.endsWith(".xlsx")) {
-                return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
-            } else if (fileName.endsWith(".ppt")) {
-                return "application/vnd.ms-powerpoint";
-            } else if (fileName.endsWith(".pptx")) {
-                return "application/vnd.openxmlformats-officedocument.presentationml.presentation";
-            } else if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
-                return "image/jpeg";
-            } else if (fileName.endsWith(".png")) {
-                return "image/png";
-            } else if (fileName.endsWith(".gif")) {
-                return "image/gif";
-            } else {
-                return "*/*"; // Fallback MIME type
-            }
+        private void openFile(Document document) {
+            DocumentOpener.open(itemView.getContext(), document);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.example.documentsharingapp;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Everything a list row shows for a document, formatted ahead of time.
+ *
+ * Models are immutable and built off the main thread whenever a document
+ * changes (see {@link DisplayModelBatcher}), so binding a row is a handful of
+ * field reads that touch no files and format nothing.
+ */
+public final class DocumentDisplayModel {
+
+    /**
+     * The views of a row, as seen by {@link #bindTo(Row)}.
+     */
+    public interface Row {
+        void showName(String name);
+
+        void showDate(String dateLabel);
+
+        void showSize(String sizeLabel);
+
+        void showIcon(int iconResource);
+    }
+
+    // SimpleDateFormat is not thread-safe and costly to create, so each thread keeps one
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("MMM dd, yyyy"));
+
+    private final String name;
+    private final String dateLabel;
+    private final String sizeLabel;
+    private final int iconResource;
+    private final String thumbnailKey;
+    private final long size;
+
+    private DocumentDisplayModel(String name, String dateLabel, String sizeLabel, int iconResource, String thumbnailKey,
+                                 long size) {
+        this.name = name;
+        this.dateLabel = dateLabel;
+        this.sizeLabel = sizeLabel;
+        this.iconResource = iconResource;
+        this.thumbnailKey = thumbnailKey;
+        this.size = size;
+    }
+
+    /**
+     * Builds the model of a document. May read the file's size, so call it
+     * off the main thread.
+     */
+    public static DocumentDisplayModel of(Document document) {
+        String dateLabel = DATE_FORMAT.get().format(new Date(document.getTimestamp()));
+
+        // Documents imported before sizes were recorded have theirs read here, off the main thread
+        long size = document.getSize();
+        boolean sizeKnown = size > 0;
+        if (!sizeKnown && document.getLocalPath() != null) {
+            File file = new File(document.getLocalPath());
+            if (file.exists()) {
+                size = file.length();
+                sizeKnown = true;
+            }
+        }
+        String sizeLabel;
+        if (sizeKnown) {
+            sizeLabel = String.format("%.1f MB", size / (1024.0 * 1024.0));
+        } else {
+            sizeLabel = "Unknown";
+        }
+
+        String thumbnailKey = ThumbnailLoader.hasPreview(document) && document.getLocalPath() != null
+                ? ThumbnailLoader.cacheKey(document)
+                : null;
+        return new DocumentDisplayModel(document.getFileName(), dateLabel, sizeLabel,
+                document.resolveType().getIconResource(), thumbnailKey, size);
+    }
+
+    /**
+     * Returns the model of a document, building it on the calling thread if
+     * it was not prepared in advance.
+     */
+    public static DocumentDisplayModel forDocument(Document document) {
+        DocumentDisplayModel model = document.getDisplayModel();
+        if (model == null) {
+            model = of(document);
+            document.setDisplayModel(model);
+        }
+        return model;
+    }
+
+    public void bindTo(Row row) {
+        row.showName(name);
+        row.showDate(dateLabel);
+        row.showSize(sizeLabel);
+        row.showIcon(iconResource);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDateLabel() {
+        return dateLabel;
+    }
+
+    public String getSizeLabel() {
+        return sizeLabel;
+    }
+
+    public int getIconResource() {
+        return iconResource;
+    }
+
+    /**
+     * Size in bytes, as recorded or read from the file; 0 when unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Key of the document's thumbnail in the {@link ThumbnailLoader} caches,
+     * or null when the document has no preview.
+     */
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+}
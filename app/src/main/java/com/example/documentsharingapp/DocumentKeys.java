@@ -0,0 +1,115 @@
+package com.example.documentsharingapp;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keys of encrypted documents.
+ *
+ * Every document is encrypted with its own random data key, which is
+ * stored in the document's header wrapped by a master key that never
+ * leaves the Android Keystore. The Keystore is only asked to wrap or
+ * unwrap one key per document opened; the chunks themselves are
+ * encrypted in-process, where AES runs at memory speed.
+ */
+public final class DocumentKeys {
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String MASTER_KEY_ALIAS = "documents_master_key";
+    private static final String WRAP_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_BITS = 256;
+    private static final int TAG_BITS = 128;
+
+    private static DocumentKeys instance;
+
+    private final SecretKey masterKey;
+
+    /**
+     * Wrapped form of a data key, as stored in a document's header.
+     */
+    public static final class WrappedKey {
+        final byte[] iv;
+        final byte[] ciphertext;
+
+        WrappedKey(byte[] iv, byte[] ciphertext) {
+            this.iv = iv;
+            this.ciphertext = ciphertext;
+        }
+    }
+
+    public static synchronized DocumentKeys get() throws IOException {
+        if (instance == null) {
+            try {
+                instance = new DocumentKeys(loadOrCreateMasterKey());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Keystore unavailable", e);
+            }
+        }
+        return instance;
+    }
+
+    private DocumentKeys(SecretKey masterKey) {
+        this.masterKey = masterKey;
+    }
+
+    private static SecretKey loadOrCreateMasterKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(MASTER_KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(MASTER_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    /**
+     * Creates the data key of a new document.
+     */
+    public SecretKey newDataKey() throws IOException {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES);
+            generator.init(DATA_KEY_BITS);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to create a document key", e);
+        }
+    }
+
+    public WrappedKey wrap(SecretKey dataKey) throws IOException {
+        try {
+            // The Keystore picks the IV, so one can never be reused by mistake
+            Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+            byte[] ciphertext = cipher.doFinal(dataKey.getEncoded());
+            return new WrappedKey(cipher.getIV(), ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to wrap a document key", e);
+        }
+    }
+
+    public SecretKey unwrap(WrappedKey wrappedKey) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, wrappedKey.iv));
+            return new SecretKeySpec(cipher.doFinal(wrappedKey.ciphertext), KeyProperties.KEY_ALGORITHM_AES);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to unwrap a document key", e);
+        }
+    }
+}
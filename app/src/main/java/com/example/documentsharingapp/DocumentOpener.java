@@ -0,0 +1,116 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens documents from any list in the app and records each open in the
+ * {@link AccessLog}. PDFs and images open in {@link DocumentViewerActivity},
+ * everything else in whichever app handles its type.
+ */
+public final class DocumentOpener {
+
+    private DocumentOpener() {
+    }
+
+    public static void open(Context context, Document document) {
+        File file = new File(document.getLocalPath());
+        boolean damaged = IntegrityScrubber.get(context).getProblem(document) == IntegrityScrubber.Problem.DAMAGED;
+        if (!file.exists() || damaged) {
+            // Imported on another device, evicted or damaged: open the downloaded copy, fetching it first if needed
+            File downloaded = BlobSync.get(context).getDownloadedFile(document);
+            if (downloaded == null) {
+                download(context, document, damaged
+                        ? "This document is damaged and no intact copy is available"
+                        : "This document is not available on this device");
+                return;
+            }
+            document.setLocalPath(downloaded.getPath());
+        }
+
+        AccessLog.get(context).recordOpen(document.getKey());
+
+        // Formats with an in-app viewer skip the switch to another app
+        if (DocumentViewerActivity.canView(document)) {
+            context.startActivity(DocumentViewerActivity.newIntent(context, document));
+            return;
+        }
+
+        // Served from the stored form with random access, so nothing is copied out for the other app
+        Uri fileUri = BlobProvider.uriFor(context, document);
+
+        // MIME type of the type detected at import
+        String mimeType = document.resolveType().getMimeType();
+
+        // Create intent to open the file
+        Intent intent = new Intent(Intent.ACTION_VIEW);
+        intent.setDataAndType(fileUri, mimeType);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        try {
+            context.startActivity(intent);
+        } catch (Exception e) {
+            // Handle case where no app can open the file
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Downloads a document that is not on this device, which includes those
+     * the {@link StorageBudget} evicted, showing progress until it opens.
+     * Cancelling only closes the dialog; the download carries on so the
+     * next open finds it done.
+     * @param failureMessage What to tell the user if no copy can be downloaded.
+     */
+    private static void download(Context context, Document document, String failureMessage) {
+        View view = LayoutInflater.from(context).inflate(R.layout.dialog_download, null);
+        ProgressBar progressBar = view.findViewById(R.id.downloadProgress);
+        TextView status = view.findViewById(R.id.downloadStatus);
+        boolean[] cancelled = new boolean[1];
+
+        AlertDialog dialog = new AlertDialog.Builder(context)
+                .setTitle("Downloading " + document.getFileName())
+                .setView(view)
+                .setNegativeButton("Cancel", (d, which) -> cancelled[0] = true)
+                .setOnCancelListener(d -> cancelled[0] = true)
+                .show();
+
+        BlobSync.get(context).download(document, new BlobSync.DownloadListener() {
+            @Override
+            public void onProgress(long downloaded, long total) {
+                if (total > 0) {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setProgress((int) (downloaded * progressBar.getMax() / total));
+                }
+                status.setText(String.format("%.1f of %.1f MB",
+                        downloaded / (1024.0 * 1024.0), total / (1024.0 * 1024.0)));
+            }
+
+            @Override
+            public void onDownloaded(File file) {
+                document.setLocalPath(file.getPath());
+                if (!cancelled[0]) {
+                    dialog.dismiss();
+                    open(context, document);
+                }
+            }
+
+            @Override
+            public void onFailed(IOException error) {
+                if (!cancelled[0]) {
+                    dialog.dismiss();
+                    Toast.makeText(context, failureMessage, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+}
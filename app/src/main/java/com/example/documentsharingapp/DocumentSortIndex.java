@@ -0,0 +1,205 @@
+package com.example.documentsharingapp;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the documents of one user in every supported sort order at once.
+ *
+ * Sort keys (a locale-aware CollationKey for the name, the timestamp and the
+ * size) are computed once when a document enters the index. Each order is an
+ * ArrayList that is kept sorted on insert, so switching the sort mode only
+ * changes which list is read and never sorts anything.
+ */
+public class DocumentSortIndex {
+
+    public enum SortMode {
+        NAME,
+        DATE,
+        SIZE
+    }
+
+    private static final Comparator<Entry> BY_NAME = (e1, e2) -> {
+        int result = e1.nameKey.compareTo(e2.nameKey);
+        return result != 0 ? result : e1.key.compareTo(e2.key);
+    };
+
+    // Newest first
+    private static final Comparator<Entry> BY_DATE = (e1, e2) -> {
+        int result = Long.compare(e2.timestamp, e1.timestamp);
+        return result != 0 ? result : e1.key.compareTo(e2.key);
+    };
+
+    // Largest first
+    private static final Comparator<Entry> BY_SIZE = (e1, e2) -> {
+        int result = Long.compare(e2.size, e1.size);
+        return result != 0 ? result : e1.key.compareTo(e2.key);
+    };
+
+    private final Collator collator;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private ArrayList<Entry> byName = new ArrayList<>();
+    private ArrayList<Entry> byDate = new ArrayList<>();
+    private ArrayList<Entry> bySize = new ArrayList<>();
+
+    public DocumentSortIndex() {
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+    }
+
+    /**
+     * Adds or replaces a single document. Each order is updated with a binary
+     * search and one array shift.
+     */
+    public void put(Document document) {
+        remove(document.getKey());
+        Entry entry = new Entry(document, collator);
+        entries.put(entry.key, entry);
+        insertSorted(byName, entry, BY_NAME);
+        insertSorted(byDate, entry, BY_DATE);
+        insertSorted(bySize, entry, BY_SIZE);
+    }
+
+    /**
+     * Adds or replaces a batch of documents. The batch is sorted on its own and
+     * merged into each order in a single linear pass, which keeps the initial
+     * load of a large library at O(n log n) instead of n binary inserts.
+     */
+    public void putAll(Collection<Document> documents) {
+        if (documents.size() == 1) {
+            put(documents.iterator().next());
+            return;
+        }
+
+        List<Entry> batch = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            remove(document.getKey());
+            Entry entry = new Entry(document, collator);
+            entries.put(entry.key, entry);
+            batch.add(entry);
+        }
+
+        byName = merge(byName, batch, BY_NAME);
+        byDate = merge(byDate, batch, BY_DATE);
+        bySize = merge(bySize, batch, BY_SIZE);
+    }
+
+    public void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        removeSorted(byName, entry, BY_NAME);
+        removeSorted(byDate, entry, BY_DATE);
+        removeSorted(bySize, entry, BY_SIZE);
+    }
+
+    public void clear() {
+        entries.clear();
+        byName.clear();
+        byDate.clear();
+        bySize.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns a read-only view of the documents in the given order. The view is
+     * backed by the index and is not copied.
+     */
+    public List<Document> ordered(SortMode mode) {
+        final List<Entry> list = listFor(mode);
+        return new AbstractList<Document>() {
+            @Override
+            public Document get(int index) {
+                return list.get(index).document;
+            }
+
+            @Override
+            public int size() {
+                return list.size();
+            }
+        };
+    }
+
+    private List<Entry> listFor(SortMode mode) {
+        switch (mode) {
+            case NAME:
+                return byName;
+            case SIZE:
+                return bySize;
+            case DATE:
+            default:
+                return byDate;
+        }
+    }
+
+    private static void insertSorted(List<Entry> list, Entry entry, Comparator<Entry> comparator) {
+        int index = Collections.binarySearch(list, entry, comparator);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        list.add(index, entry);
+    }
+
+    private static void removeSorted(List<Entry> list, Entry entry, Comparator<Entry> comparator) {
+        int index = Collections.binarySearch(list, entry, comparator);
+        if (index >= 0) {
+            list.remove(index);
+        }
+    }
+
+    private static ArrayList<Entry> merge(List<Entry> sorted, List<Entry> batch, Comparator<Entry> comparator) {
+        List<Entry> sortedBatch = new ArrayList<>(batch);
+        Collections.sort(sortedBatch, comparator);
+
+        ArrayList<Entry> merged = new ArrayList<>(sorted.size() + sortedBatch.size());
+        int i = 0;
+        int j = 0;
+        while (i < sorted.size() && j < sortedBatch.size()) {
+            if (comparator.compare(sorted.get(i), sortedBatch.get(j)) <= 0) {
+                merged.add(sorted.get(i++));
+            } else {
+                merged.add(sortedBatch.get(j++));
+            }
+        }
+        while (i < sorted.size()) {
+            merged.add(sorted.get(i++));
+        }
+        while (j < sortedBatch.size()) {
+            merged.add(sortedBatch.get(j++));
+        }
+        return merged;
+    }
+
+    private static final class Entry {
+        final String key;
+        final Document document;
+        final CollationKey nameKey;
+        final long timestamp;
+        final long size;
+
+        Entry(Document document, Collator collator) {
+            this.key = document.getKey();
+            this.document = document;
+            String fileName = document.getFileName() != null ? document.getFileName() : "";
+            this.nameKey = collator.getCollationKey(fileName);
+            this.timestamp = document.getTimestamp();
+            this.size = document.resolveSize();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.storage.StorageManager;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The one way in and out of stored documents.
+ *
+ * New documents are written encrypted ({@link EncryptedBlobWriter}).
+ * Reading goes through a {@link SeekableBlob}, as a stream, or as a file
+ * descriptor for APIs that insist on one (PdfRenderer, region decoding),
+ * and works the same for encrypted documents and for plaintext ones
+ * imported before encryption was introduced.
+ */
+public final class DocumentStore {
+
+    private static final String TAG = "DocumentStore";
+
+    // Reads on every proxy descriptor are served on this thread
+    private static Handler proxyHandler;
+
+    private DocumentStore() {
+    }
+
+    /**
+     * Creates a document, encrypting what is written to the returned stream.
+     * The document is complete once the stream is closed.
+     */
+    public static OutputStream create(File file) throws IOException {
+        return EncryptedBlobWriter.create(file);
+    }
+
+    public static SeekableBlob open(File file) throws IOException {
+        return EncryptedBlob.isEncrypted(file) ? new EncryptedBlob(file) : new FileBlob(file);
+    }
+
+    public static InputStream openStream(File file) throws IOException {
+        if (!EncryptedBlob.isEncrypted(file)) {
+            return new FileInputStream(file);
+        }
+        return new BlobInputStream(new EncryptedBlob(file));
+    }
+
+    /**
+     * Opens a seekable, read-only descriptor on the document's content. For
+     * encrypted documents it is a proxy descriptor whose reads are decrypted
+     * a chunk at a time as they arrive.
+     */
+    public static ParcelFileDescriptor openDescriptor(Context context, File file) throws IOException {
+        if (!EncryptedBlob.isEncrypted(file)) {
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+        SeekableBlob blob = new EncryptedBlob(file);
+        try {
+            StorageManager storageManager = context.getSystemService(StorageManager.class);
+            return storageManager.openProxyFileDescriptor(ParcelFileDescriptor.MODE_READ_ONLY,
+                    new BlobProxyCallback(blob), getProxyHandler());
+        } catch (IOException | RuntimeException e) {
+            blob.close();
+            throw e;
+        }
+    }
+
+    private static synchronized Handler getProxyHandler() {
+        if (proxyHandler == null) {
+            HandlerThread thread = new HandlerThread("DocumentProxy");
+            thread.start();
+            proxyHandler = new Handler(thread.getLooper());
+        }
+        return proxyHandler;
+    }
+
+    /**
+     * Encrypts the documents in a directory that are still stored in
+     * plaintext, replacing each file only once its encrypted copy is
+     * complete. Reads every such file, so call it off the main thread.
+     */
+    public static void encryptExisting(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        byte[] buffer = new byte[EncryptedBlob.CHUNK_SIZE];
+        for (File file : files) {
+            if (!file.isFile() || file.getName().endsWith(".tmp")) {
+                continue;
+            }
+            File tempFile = new File(file.getPath() + ".tmp");
+            try {
+                if (EncryptedBlob.isEncrypted(file)) {
+                    continue;
+                }
+                try (InputStream in = new FileInputStream(file);
+                     OutputStream out = create(tempFile)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to replace " + file.getName());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to encrypt " + file.getName(), e);
+                tempFile.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AppCompatActivity;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * DocumentViewerActivity shows PDFs and large images inside the app instead
+ * of handing them to an external viewer.
+ */
+public class DocumentViewerActivity extends AppCompatActivity {
+
+    private static final String EXTRA_PATH = "path";
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_FILE_TYPE = "fileType";
+
+    // Opens the source off the main thread; it parses the file and its first pages
+    private final ExecutorService opener = Executors.newSingleThreadExecutor();
+
+    private TiledDocumentView documentView;
+    private TextView pageIndicator;
+
+    /**
+     * Whether documents of this kind open here rather than in another app.
+     */
+    public static boolean canView(Document document) {
+        FileType type = document.resolveType();
+        return type == FileType.PDF || ImageTileSource.canDecode(type);
+    }
+
+    public static Intent newIntent(Context context, Document document) {
+        Intent intent = new Intent(context, DocumentViewerActivity.class);
+        intent.putExtra(EXTRA_PATH, document.getLocalPath());
+        intent.putExtra(EXTRA_TITLE, document.getFileName());
+        intent.putExtra(EXTRA_FILE_TYPE, document.resolveType().getCode());
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_document_viewer);
+
+        String path = getIntent().getStringExtra(EXTRA_PATH);
+        TextView documentTitle = findViewById(R.id.documentTitle);
+        documentTitle.setText(getIntent().getStringExtra(EXTRA_TITLE));
+        ImageView backButton = findViewById(R.id.backButton);
+        backButton.setOnClickListener(v -> finish());
+
+        pageIndicator = findViewById(R.id.pageIndicator);
+        documentView = findViewById(R.id.documentView);
+        documentView.setOnPageChangeListener((page, pageCount) -> {
+            pageIndicator.setText((page + 1) + " / " + pageCount);
+            pageIndicator.setVisibility(pageCount > 1 ? View.VISIBLE : View.GONE);
+        });
+
+        FileType type = FileType.fromCode(getIntent().getIntExtra(EXTRA_FILE_TYPE, FileType.NOT_RECORDED));
+        openSource(new File(path), type == FileType.PDF);
+    }
+
+    private void openSource(File file, boolean pdf) {
+        opener.execute(() -> {
+            try {
+                TileSource source = pdf ? new PdfTileSource(this, file) : new ImageTileSource(this, file);
+                runOnUiThread(() -> {
+                    if (isDestroyed()) {
+                        closeQuietly(source);
+                        return;
+                    }
+                    documentView.setSource(source);
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> {
+                    Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    finish();
+                });
+            }
+        });
+    }
+
+    private static void closeQuietly(TileSource source) {
+        try {
+            source.close();
+        } catch (Exception e) {
+            // Nothing left to do with it
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        opener.shutdown();
+        documentView.release();
+    }
+}
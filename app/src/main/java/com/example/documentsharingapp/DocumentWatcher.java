@@ -0,0 +1,306 @@
+package com.example.documentsharingapp;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notices documents whose files change on disk outside of an import, so
+ * their recorded hash, size and type, and everything keyed by the hash,
+ * can follow.
+ *
+ * A journal keeps the modification time and size each file had when its
+ * hash was last known. A {@link FileObserver} on the documents directory
+ * reports files as they are written, and on start every file is compared
+ * with its journal entry to catch changes made while the app was not
+ * running. Either way, comparing the two numbers is all that is done for
+ * an unchanged file; only a file whose time or size moved is read and
+ * hashed again.
+ */
+public class DocumentWatcher {
+
+    /**
+     * Receives documents whose content changed, on the main thread.
+     */
+    public interface Listener {
+        void onContentChanged(File file, String contentHash, long size, FileType fileType);
+    }
+
+    private static final String TAG = "DocumentWatcher";
+    private static final String JOURNAL_FILE_NAME = "document_journal.bin";
+    private static final int JOURNAL_VERSION = 1;
+    private static final int EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM;
+    // Writers often close a file several times in a row; checks wait for them to settle
+    private static final long SETTLE_DELAY_MS = 1000;
+
+    private final File directory;
+    private final File journalFile;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor();
+    // Guarded by this
+    private final Map<String, Entry> journal = new HashMap<>();
+    private final Set<String> pendingNames = new HashSet<>();
+    private FileObserver observer;
+    private boolean stopped;
+
+    public DocumentWatcher(File directory, File journalDirectory, Listener listener) {
+        this.directory = directory;
+        this.journalFile = new File(journalDirectory, JOURNAL_FILE_NAME);
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the journal, checks every file against it and starts watching.
+     * Does I/O, so call it off the main thread.
+     */
+    public void start() {
+        synchronized (this) {
+            readJournal();
+        }
+        File[] files = directory.listFiles();
+        Set<String> names = new HashSet<>();
+        if (files != null) {
+            for (File file : files) {
+                if (isDocument(file.getName())) {
+                    names.add(file.getName());
+                    check(file);
+                }
+            }
+        }
+        synchronized (this) {
+            journal.keySet().retainAll(names);
+            writeJournal();
+            // Stopped while the files were being checked
+            if (stopped) {
+                return;
+            }
+            observer = new Observer(directory.getPath());
+            observer.startWatching();
+        }
+    }
+
+    /**
+     * Stops watching for good. Safe to call before or while {@link #start()}
+     * runs; it then never starts watching.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+        worker.shutdown();
+    }
+
+    /**
+     * Records the state of a file whose hash the caller just computed, such
+     * as a fresh import, so it is not hashed again.
+     */
+    public void record(File file, String contentHash) {
+        synchronized (this) {
+            journal.put(file.getName(), new Entry(file.lastModified(), file.length(), contentHash));
+        }
+        scheduleCheck(file.getName());
+    }
+
+    private synchronized void scheduleCheck(String name) {
+        // Events can still arrive while the observer is being stopped
+        if (stopped || !pendingNames.add(name) || pendingNames.size() > 1) {
+            return;
+        }
+        worker.schedule(this::checkPending, SETTLE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkPending() {
+        Set<String> names;
+        synchronized (this) {
+            names = new HashSet<>(pendingNames);
+            pendingNames.clear();
+        }
+        for (String name : names) {
+            check(new File(directory, name));
+        }
+        synchronized (this) {
+            if (!stopped) {
+                writeJournal();
+            }
+        }
+    }
+
+    /**
+     * Compares a file with its journal entry and hashes it again if it
+     * changed. Runs off the main thread.
+     */
+    private void check(File file) {
+        String name = file.getName();
+        if (!file.isFile()) {
+            synchronized (this) {
+                journal.remove(name);
+            }
+            return;
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        Entry entry;
+        synchronized (this) {
+            entry = journal.get(name);
+            if (entry == null) {
+                // First sight of a file, e.g. from before the journal; its hash is in the database
+                journal.put(name, new Entry(modified, length, null));
+                return;
+            }
+        }
+        if (entry.modified == modified && entry.length == length) {
+            return;
+        }
+
+        Entry changed;
+        FileType fileType;
+        long size = 0;
+        try (InputStream in = DocumentStore.openStream(file)) {
+            MessageDigest digest = ContentHash.newDigest();
+            byte[] header = new byte[FileType.HEADER_BYTES];
+            int headerLength = 0;
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+                size += bytesRead;
+                if (headerLength < header.length) {
+                    int headerBytes = Math.min(bytesRead, header.length - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, headerBytes);
+                    headerLength += headerBytes;
+                }
+            }
+            changed = new Entry(modified, length, ContentHash.toHex(digest.digest()));
+            fileType = FileType.sniff(header, headerLength, name);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to hash " + file, e);
+            return;
+        }
+
+        synchronized (this) {
+            journal.put(name, changed);
+        }
+        // Rewritten with the same content, as when a document is encrypted in place
+        if (changed.contentHash.equals(entry.contentHash)) {
+            return;
+        }
+        long contentLength = size;
+        mainHandler.post(() -> listener.onContentChanged(file, changed.contentHash, contentLength, fileType));
+    }
+
+    // Imports and migrations write under temporary names first
+    private static boolean isDocument(String name) {
+        return name != null && !name.endsWith(".tmp");
+    }
+
+    /**
+     * Adds the saved journal to the entries recorded since the app started.
+     * Those are newer, so they win over saved ones for the same file.
+     */
+    private void readJournal() {
+        Map<String, Entry> saved = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readInt() != JOURNAL_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long modified = in.readLong();
+                long length = in.readLong();
+                String contentHash = in.readBoolean() ? in.readUTF() : null;
+                saved.put(name, new Entry(modified, length, contentHash));
+            }
+        } catch (FileNotFoundException e) {
+            // No journal yet; every file is taken as it is
+            return;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable journal", e);
+            return;
+        }
+        for (Map.Entry<String, Entry> each : saved.entrySet()) {
+            if (!journal.containsKey(each.getKey())) {
+                journal.put(each.getKey(), each.getValue());
+            }
+        }
+    }
+
+    private void writeJournal() {
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(JOURNAL_VERSION);
+            out.writeInt(journal.size());
+            for (Map.Entry<String, Entry> each : journal.entrySet()) {
+                Entry entry = each.getValue();
+                out.writeUTF(each.getKey());
+                out.writeLong(entry.modified);
+                out.writeLong(entry.length);
+                out.writeBoolean(entry.contentHash != null);
+                if (entry.contentHash != null) {
+                    out.writeUTF(entry.contentHash);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write journal", e);
+            return;
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            Log.w(TAG, "Failed to replace journal");
+        }
+    }
+
+    /**
+     * What a file looked like when its hash was last known.
+     */
+    private static final class Entry {
+        final long modified;
+        final long length;
+        // Null for files taken as they were found
+        final String contentHash;
+
+        Entry(long modified, long length, String contentHash) {
+            this.modified = modified;
+            this.length = length;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private final class Observer extends FileObserver {
+
+        @SuppressWarnings("deprecation")
+        Observer(String path) {
+            // The File constructor needs API 29
+            super(path, EVENTS);
+        }
+
+        @Override
+        public void onEvent(int event, String name) {
+            if (isDocument(name)) {
+                scheduleCheck(name);
+            }
+        }
+    }
+}
@@ -1,26 +1,38 @@
 package com.example.documentsharingapp;
 
+import android.content.ClipData;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.InputType;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.PopupMenu;
+import android.widget.TextView;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.chip.ChipGroup;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.ValueEventListener;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class DocumentsFragment extends Fragment {
 
@@ -28,13 +40,26 @@ public class DocumentsFragment extends Fragment {
     private ChipGroup filterChipGroup;
     private LinearLayout emptyState;
     private EditText searchInput;
+    private ImageView sortButton;
+    private View selectionBar;
+    private TextView selectionCount;
 
     private HomeActivity homeActivity;
     private DatabaseReference docRef;
     private FirebaseUser currentUser;
-    private List<Document> documentList = new ArrayList<>();
+    private ChildEventListener documentListener;
+    private DocumentSortIndex sortIndex = new DocumentSortIndex();
+    private DocumentSortIndex.SortMode sortMode = DocumentSortIndex.SortMode.DATE;
+    // Documents received since the last refresh, applied to the index as one batch
+    // once their row labels have been prepared
+    private final DisplayModelBatcher pendingDocuments = new DisplayModelBatcher(this::onDocumentsReady);
     private List<Document> filteredList = new ArrayList<>();
     private DocumentAdapter documentAdapter;
+    private final Runnable refreshRunnable = this::applyPendingDocuments;
+    // Set when a refresh was requested while the tab was paused
+    private boolean refreshDeferred;
+    // Rows show what the integrity scrub found, so they are rebound when it finds something
+    private final IntegrityScrubber.Listener integrityListener = () -> documentAdapter.notifyDataSetChanged();
 
     @Nullable
     @Override
@@ -68,43 +93,346 @@ public class DocumentsFragment extends Fragment {
         filterChipGroup = view.findViewById(R.id.filterChipGroup);
         emptyState = view.findViewById(R.id.emptyState);
         searchInput = view.findViewById(R.id.searchInput);
+        sortButton = view.findViewById(R.id.sortButton);
+        selectionBar = view.findViewById(R.id.selectionBar);
+        selectionCount = view.findViewById(R.id.selectionCount);
+        view.findViewById(R.id.moveSelected).setOnClickListener(v -> showBulkMoveDialog());
+        view.findViewById(R.id.tagSelected).setOnClickListener(v -> showBulkTagsDialog());
+        view.findViewById(R.id.shareSelectedWith).setOnClickListener(v -> showBulkShareDialog());
+        view.findViewById(R.id.shareSelected).setOnClickListener(v -> shareSelectedAsArchive());
+        view.findViewById(R.id.deleteSelected).setOnClickListener(v -> confirmBulkDelete());
+        view.findViewById(R.id.clearSelection).setOnClickListener(v -> documentAdapter.clearSelection());
     }
 
     private void setupRecyclerView() {
-        documentsRecycler.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        documentsRecycler.setLayoutManager(layoutManager);
         documentAdapter = new DocumentAdapter(filteredList);
+        documentAdapter.setOnDocumentOptionListener(new DocumentAdapter.OnDocumentOptionListener() {
+            @Override
+            public void onShare(Document document) {
+                showShareDialog(document);
+            }
+
+            @Override
+            public void onMoveToFolder(Document document) {
+                showMoveDialog(document);
+            }
+
+            @Override
+            public void onEditTags(Document document) {
+                showTagsDialog(document);
+            }
+
+            @Override
+            public void onDelete(Document document) {
+                confirmDelete(document);
+            }
+        });
+        documentAdapter.setOnSelectionChangeListener(this::onSelectionChanged);
         documentsRecycler.setAdapter(documentAdapter);
+        IntegrityScrubber.get(requireContext()).addListener(integrityListener);
+        new ViewportPrefetcher(layoutManager, documentAdapter, ThumbnailLoader.get(requireContext()))
+                .attach(documentsRecycler);
     }
 
-    public void loadDocuments() {
-        if (currentUser != null) {
-            docRef.child(currentUser.getUid()).addValueEventListener(new ValueEventListener() {
-                @Override
-                public void onDataChange(@NonNull DataSnapshot snapshot) {
-                    documentList.clear();
-                    for (DataSnapshot docSnapshot : snapshot.getChildren()) {
-                        Document doc = docSnapshot.getValue(Document.class);
-                        if (doc != null) {
-                            documentList.add(doc);
-                        }
+    private void onSelectionChanged(int selectedCount) {
+        selectionBar.setVisibility(selectedCount > 0 ? View.VISIBLE : View.GONE);
+        selectionCount.setText(selectedCount + " selected");
+    }
+
+    private void shareSelectedAsArchive() {
+        List<Document> available = new ArrayList<>();
+        List<String> unavailableNames = new ArrayList<>();
+        for (Document document : documentAdapter.getSelectedDocuments()) {
+            if (ArchiveProvider.findLocalFile(requireContext(), document) != null) {
+                available.add(document);
+            } else {
+                unavailableNames.add(document.getFileName());
+            }
+        }
+        if (unavailableNames.isEmpty()) {
+            shareAsArchive(available);
+            return;
+        }
+        if (available.isEmpty()) {
+            Toast.makeText(getContext(), "None of the selected documents are on this device", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Said up front, so the recipient does not get a smaller archive without anyone knowing
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Not on this device")
+                .setMessage(unavailableNames.size() + " of the selected documents are not on this device "
+                        + "and will be left out:\n\n" + TextUtils.join("\n", unavailableNames))
+                .setPositiveButton("Share the rest", (dialog, which) -> shareAsArchive(available))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void shareAsArchive(List<Document> selected) {
+        // Streamed to the receiving app as it reads, so nothing is written to disk first
+        Uri archive = ArchiveProvider.createArchive(requireContext(), "Documents.zip", selected);
+
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(ArchiveProvider.MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM, archive);
+        intent.setClipData(ClipData.newRawUri("", archive));
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        try {
+            startActivity(Intent.createChooser(intent, "Share " + selected.size() + " documents"));
+            documentAdapter.clearSelection();
+        } catch (Exception e) {
+            Toast.makeText(getContext(), "No app can receive the documents", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Bulk actions write the whole selection in one multi-path update, so the
+    // list changes once for all of it instead of once per document
+
+    private void showBulkMoveDialog() {
+        List<Document> selected = documentAdapter.getSelectedDocuments();
+        EditText input = new EditText(requireContext());
+        input.setHint("Folder name");
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Move " + selected.size() + " documents to folder")
+                .setView(input)
+                .setPositiveButton("Move", (dialog, which) -> {
+                    String folder = input.getText().toString().trim();
+                    homeActivity.moveDocuments(selected, folder.isEmpty() ? null : folder);
+                    documentAdapter.clearSelection();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showBulkTagsDialog() {
+        List<Document> selected = documentAdapter.getSelectedDocuments();
+        EditText input = new EditText(requireContext());
+        input.setHint("Tags, separated by commas");
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Add tags to " + selected.size() + " documents")
+                .setView(input)
+                .setPositiveButton("Add", (dialog, which) -> {
+                    homeActivity.addDocumentTags(selected, parseTags(input.getText().toString()));
+                    documentAdapter.clearSelection();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showBulkShareDialog() {
+        List<Document> selected = documentAdapter.getSelectedDocuments();
+        EditText input = new EditText(requireContext());
+        input.setHint("Recipient's email");
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS);
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Share " + selected.size() + " documents")
+                .setView(input)
+                .setPositiveButton("Share", (dialog, which) -> {
+                    String email = input.getText().toString().trim();
+                    if (!email.isEmpty()) {
+                        homeActivity.shareDocuments(selected, email);
+                        documentAdapter.clearSelection();
                     }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void confirmBulkDelete() {
+        List<Document> selected = documentAdapter.getSelectedDocuments();
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Delete documents")
+                .setMessage("Delete " + selected.size() + " documents?")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    homeActivity.deleteDocuments(selected);
+                    documentAdapter.clearSelection();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showShareDialog(Document document) {
+        EditText input = new EditText(requireContext());
+        input.setHint("Recipient's email");
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS);
 
-                    // Update UI based on document count
-                    if (documentList.isEmpty()) {
-                        emptyState.setVisibility(View.VISIBLE);
-                        documentsRecycler.setVisibility(View.GONE);
-                    } else {
-                        emptyState.setVisibility(View.GONE);
-                        documentsRecycler.setVisibility(View.VISIBLE);
-                        filterDocuments(searchInput.getText().toString(), getSelectedFileType());
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Share \"" + document.getFileName() + "\"")
+                .setView(input)
+                .setPositiveButton("Share", (dialog, which) -> {
+                    String email = input.getText().toString().trim();
+                    if (!email.isEmpty()) {
+                        homeActivity.shareDocument(document, email);
                     }
-                }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showMoveDialog(Document document) {
+        EditText input = new EditText(requireContext());
+        input.setHint("Folder name");
+        input.setText(document.getFolder());
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Move to folder")
+                .setView(input)
+                .setPositiveButton("Move", (dialog, which) -> {
+                    String folder = input.getText().toString().trim();
+                    homeActivity.moveDocument(document, folder.isEmpty() ? null : folder);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showTagsDialog(Document document) {
+        EditText input = new EditText(requireContext());
+        input.setHint("Tags, separated by commas");
+        input.setText(TextUtils.join(", ", document.getTags().keySet()));
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Edit tags")
+                .setView(input)
+                .setPositiveButton("Save", (dialog, which) ->
+                        homeActivity.setDocumentTags(document, parseTags(input.getText().toString())))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void confirmDelete(Document document) {
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Delete document")
+                .setMessage("Delete \"" + document.getFileName() + "\"?")
+                .setPositiveButton("Delete", (dialog, which) -> homeActivity.deleteDocument(document))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // Tags become database keys, so characters Firebase rejects in keys are dropped
+    private static Set<String> parseTags(String text) {
+        Set<String> tags = new LinkedHashSet<>();
+        for (String part : text.split(",")) {
+            String tag = part.replaceAll("[.#$\\[\\]/]", "").trim();
+            if (!tag.isEmpty()) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
 
-                @Override
-                public void onCancelled(@NonNull DatabaseError error) {
-                    // Handle error
+    public void loadDocuments() {
+        if (currentUser == null) {
+            return;
+        }
+
+        // Listen for individual child changes so the sort index is maintained
+        // incrementally instead of being rebuilt from every snapshot
+        if (documentListener != null) {
+            docRef.child(currentUser.getUid()).removeEventListener(documentListener);
+        }
+        sortIndex.clear();
+        pendingDocuments.clear();
+
+        documentListener = docRef.child(currentUser.getUid()).addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                Document doc = snapshot.getValue(Document.class);
+                if (doc != null) {
+                    doc.setKey(snapshot.getKey());
+                    pendingDocuments.put(doc);
+                    scheduleRefresh();
                 }
-            });
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                onChildAdded(snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                pendingDocuments.remove(snapshot.getKey());
+                sortIndex.remove(snapshot.getKey());
+                SimilarImageIndex.get(requireContext()).remove(snapshot.getKey());
+                scheduleRefresh();
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                // Order is determined by the sort index, not by the database
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                // Handle error
+            }
+        });
+    }
+
+    /**
+     * Coalesces a burst of child events (such as the initial load) into a single
+     * index update and list refresh on the next frame. While the tab is hidden,
+     * changes only accumulate and are applied in one refresh when it is shown.
+     */
+    private void scheduleRefresh() {
+        if (!isResumed()) {
+            refreshDeferred = true;
+            return;
+        }
+        documentsRecycler.removeCallbacks(refreshRunnable);
+        documentsRecycler.post(refreshRunnable);
+    }
+
+    private void applyPendingDocuments() {
+        // New and changed documents follow in onDocumentsReady
+        pendingDocuments.flush();
+        showDocuments();
+    }
+
+    private void onDocumentsReady(List<Document> documents) {
+        sortIndex.putAll(documents);
+        SimilarImageIndex similarImages = SimilarImageIndex.get(requireContext());
+        for (Document doc : documents) {
+            similarImages.submit(doc);
+        }
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (refreshDeferred) {
+            refreshDeferred = false;
+            scheduleRefresh();
+        }
+    }
+
+    private void showDocuments() {
+        // Update UI based on document count
+        if (sortIndex.isEmpty()) {
+            emptyState.setVisibility(View.VISIBLE);
+            documentsRecycler.setVisibility(View.GONE);
+        } else {
+            emptyState.setVisibility(View.GONE);
+            documentsRecycler.setVisibility(View.VISIBLE);
+        }
+        filterDocuments(searchInput.getText().toString(), getSelectedFileType());
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        documentsRecycler.removeCallbacks(refreshRunnable);
+        pendingDocuments.clear();
+        IntegrityScrubber.get(requireContext()).removeListener(integrityListener);
+        if (documentListener != null && currentUser != null) {
+            docRef.child(currentUser.getUid()).removeEventListener(documentListener);
+            documentListener = null;
         }
     }
 
@@ -127,56 +455,70 @@ public class DocumentsFragment extends Fragment {
         filterChipGroup.setOnCheckedChangeListener((group, checkedId) -> {
             filterDocuments(searchInput.getText().toString(), getSelectedFileType());
         });
+
+        // Sort button
+        sortButton.setOnClickListener(v -> showSortMenu());
+    }
+
+    private void showSortMenu() {
+        PopupMenu popup = new PopupMenu(requireContext(), sortButton);
+        popup.getMenuInflater().inflate(R.menu.sort_menu, popup.getMenu());
+        if (sortMode == DocumentSortIndex.SortMode.NAME) {
+            popup.getMenu().findItem(R.id.sortByName).setChecked(true);
+        } else if (sortMode == DocumentSortIndex.SortMode.SIZE) {
+            popup.getMenu().findItem(R.id.sortBySize).setChecked(true);
+        } else {
+            popup.getMenu().findItem(R.id.sortByDate).setChecked(true);
+        }
+
+        popup.setOnMenuItemClickListener(item -> {
+            int itemId = item.getItemId();
+            if (itemId == R.id.sortByName) {
+                sortMode = DocumentSortIndex.SortMode.NAME;
+            } else if (itemId == R.id.sortBySize) {
+                sortMode = DocumentSortIndex.SortMode.SIZE;
+            } else {
+                sortMode = DocumentSortIndex.SortMode.DATE;
+            }
+            // Every order is already maintained by the index, so this is just a re-filter
+            filterDocuments(searchInput.getText().toString(), getSelectedFileType());
+            return true;
+        });
+        popup.show();
     }
 
-    private String getSelectedFileType() {
+    /**
+     * Returns the category of the checked filter chip, or null for all documents.
+     */
+    private FileType.Category getSelectedFileType() {
         int checkedId = filterChipGroup.getCheckedChipId();
         if (checkedId == R.id.pdfChip) {
-            return "pdf";
+            return FileType.Category.PDF;
         } else if (checkedId == R.id.docChip) {
-            return "doc";
+            return FileType.Category.DOC;
         } else if (checkedId == R.id.xlsChip) {
-            return "xls";
+            return FileType.Category.XLS;
         } else if (checkedId == R.id.pptChip) {
-            return "ppt";
+            return FileType.Category.PPT;
         } else if (checkedId == R.id.imgChip) {
-            return "img";
-        } else if (checkedId == R.id.allChip) {
-            return "all";
+            return FileType.Category.IMAGE;
         } else {
-            return "all"; // Default to all
+            return null; // All, and the default
         }
     }
 
-    private void filterDocuments(String query, String fileType) {
+    private void filterDocuments(String query, FileType.Category category) {
         filteredList.clear();
+        String lowerQuery = query.toLowerCase();
 
-        for (Document doc : documentList) {
-            String fileName = doc.getFileName().toLowerCase();
-            boolean matchesQuery = query.isEmpty() || fileName.contains(query.toLowerCase());
-            boolean matchesType = false;
-
-            if (fileType.equals("all")) {
-                matchesType = true;
-            } else if (fileType.equals("pdf")) {
-                matchesType = fileName.endsWith(".pdf");
-            } else if (fileType.equals("doc")) {
-                matchesType = fileName.endsWith(".doc") || fileName.endsWith(".docx");
-            } else if (fileType.equals("xls")) {
-                matchesType = fileName.endsWith(".xls") || fileName.endsWith(".xlsx");
-            } else if (fileType.equals("ppt")) {
-                matchesType = fileName.endsWith(".ppt") || fileName.endsWith(".pptx");
-            } else if (fileType.equals("img")) {
-                matchesType = fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ||
-                        fileName.endsWith(".png") || fileName.endsWith(".gif");
-            }
-
-            if (matchesQuery && matchesType) {
+        for (Document doc : sortIndex.ordered(sortMode)) {
+            boolean matchesType = category == null || doc.resolveType().getCategory() == category;
+            if (matchesType && (lowerQuery.isEmpty() || doc.getFileName().toLowerCase().contains(lowerQuery))) {
                 filteredList.add(doc);
             }
         }
 
+        documentAdapter.retainListedSelection();
         documentAdapter.notifyDataSetChanged();
     }
 }
-
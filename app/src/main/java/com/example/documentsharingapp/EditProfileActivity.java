@@ -1,6 +1,5 @@
 package com.example.documentsharingapp;
 
-import android.net.Uri;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.ImageView;
@@ -17,7 +16,6 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import de.hdodenhof.circleimageview.CircleImageView;
-import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -111,12 +109,7 @@ public class EditProfileActivity extends AppCompatActivity {
 
                         // Set profile image
                         String localPath = snapshot.child("profilePicture").getValue(String.class);
-                        if (localPath != null) {
-                            File imageFile = new File(localPath);
-                            if (imageFile.exists()) {
-                                profileImage.setImageURI(Uri.fromFile(imageFile));
-                            }
-                        }
+                        AvatarCache.get(EditProfileActivity.this).load(localPath, profileImage);
                     }
                 }
 
@@ -0,0 +1,218 @@
+package com.example.documentsharingapp;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * A document stored encrypted, readable at any offset.
+ *
+ * The file is a header followed by the content split into fixed-size
+ * chunks, each sealed on its own with AES-GCM:
+ *
+ *   "DSEC" | version | chunk size | wrapped key IV | wrapped data key
+ *   chunk 0 ciphertext + tag | chunk 1 ciphertext + tag | ...
+ *
+ * A chunk's IV is its index, which is safe because every document has its
+ * own data key (see {@link DocumentKeys}). The index and whether the chunk
+ * is the last one are authenticated with it, so chunks cannot be
+ * reordered, dropped or cut off at a chunk boundary without the read
+ * failing. Reading any byte costs decrypting the one chunk it is in.
+ */
+public class EncryptedBlob implements SeekableBlob {
+
+    static final byte[] MAGIC = {'D', 'S', 'E', 'C'};
+    static final int VERSION = 1;
+    // Also the proxy descriptor block size, so each cached block is one chunk
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int TAG_BYTES = 16;
+    static final int IV_BYTES = 12;
+    static final int AAD_BYTES = 9;
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final FileInputStream in;
+    private final FileChannel channel;
+    private final DocumentKeys.WrappedKey wrappedKey;
+    private final int chunkSize;
+    private final long bodyOffset;
+    private final long chunkCount;
+    private final long size;
+
+    private final byte[] iv = new byte[IV_BYTES];
+    private final byte[] aad = new byte[AAD_BYTES];
+    private final byte[] sealed;
+    private final byte[] chunk;
+    private Cipher cipher;
+    private SecretKey dataKey;
+    // Index of the chunk held decrypted in chunk, or -1
+    private long chunkIndex = -1;
+    private int chunkLength;
+
+    /**
+     * The parts of the header needed to read or continue a document.
+     */
+    static final class Header {
+        final int chunkSize;
+        final DocumentKeys.WrappedKey wrappedKey;
+        final long bodyOffset;
+
+        private Header(int chunkSize, DocumentKeys.WrappedKey wrappedKey, long bodyOffset) {
+            this.chunkSize = chunkSize;
+            this.wrappedKey = wrappedKey;
+            this.bodyOffset = bodyOffset;
+        }
+
+        static Header read(File file) throws IOException {
+            try (DataInputStream header = new DataInputStream(new FileInputStream(file))) {
+                if (!hasMagic(header)) {
+                    throw new IOException(file.getName() + " is not an encrypted document");
+                }
+                int version = header.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported document version " + version);
+                }
+                int chunkSize = header.readInt();
+                if (chunkSize <= 0) {
+                    throw new IOException("Invalid chunk size " + chunkSize);
+                }
+                byte[] wrapIv = new byte[header.readUnsignedByte()];
+                header.readFully(wrapIv);
+                byte[] wrapped = new byte[header.readUnsignedShort()];
+                header.readFully(wrapped);
+                long bodyOffset = MAGIC.length + 1 + 4 + 1 + wrapIv.length + 2 + wrapped.length;
+                return new Header(chunkSize, new DocumentKeys.WrappedKey(wrapIv, wrapped), bodyOffset);
+            }
+        }
+    }
+
+    /**
+     * Opens an encrypted document and reads its header. The data key is
+     * unwrapped on the first read.
+     */
+    public EncryptedBlob(File file) throws IOException {
+        in = new FileInputStream(file);
+        try {
+            channel = in.getChannel();
+            Header header = Header.read(file);
+            chunkSize = header.chunkSize;
+            wrappedKey = header.wrappedKey;
+            bodyOffset = header.bodyOffset;
+
+            // Every chunk is full except the last, which always exists even for empty content
+            long body = channel.size() - bodyOffset;
+            long sealedChunk = chunkSize + TAG_BYTES;
+            chunkCount = Math.max(1, (body + sealedChunk - 1) / sealedChunk);
+            long lastSealed = body - (chunkCount - 1) * sealedChunk;
+            if (lastSealed < TAG_BYTES) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            size = (chunkCount - 1) * chunkSize + lastSealed - TAG_BYTES;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        sealed = new byte[chunkSize + TAG_BYTES];
+        chunk = new byte[chunkSize];
+    }
+
+    /**
+     * Whether a file is in the encrypted format, as opposed to a document
+     * stored in plaintext before encryption was introduced.
+     */
+    public static boolean isEncrypted(File file) throws IOException {
+        try (InputStream header = new FileInputStream(file)) {
+            return hasMagic(header);
+        }
+    }
+
+    private static boolean hasMagic(InputStream header) throws IOException {
+        for (byte expected : MAGIC) {
+            if (header.read() != (expected & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void chunkIv(long index, byte[] iv) {
+        for (int i = 0; i < 4; i++) {
+            iv[i] = 0;
+        }
+        for (int i = 0; i < 8; i++) {
+            iv[4 + i] = (byte) (index >>> (56 - 8 * i));
+        }
+    }
+
+    static void chunkAad(long index, boolean last, byte[] aad) {
+        for (int i = 0; i < 8; i++) {
+            aad[i] = (byte) (index >>> (56 - 8 * i));
+        }
+        aad[8] = (byte) (last ? 1 : 0);
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        long index = position / chunkSize;
+        if (index != chunkIndex) {
+            decryptChunk(index);
+        }
+        int chunkOffset = (int) (position - index * chunkSize);
+        int count = Math.min(length, chunkLength - chunkOffset);
+        System.arraycopy(chunk, chunkOffset, buffer, offset, count);
+        return count;
+    }
+
+    private void decryptChunk(long index) throws IOException {
+        if (dataKey == null) {
+            dataKey = DocumentKeys.get().unwrap(wrappedKey);
+        }
+
+        boolean last = index == chunkCount - 1;
+        int sealedLength = last
+                ? (int) (size - index * chunkSize) + TAG_BYTES
+                : chunkSize + TAG_BYTES;
+        long filePosition = bodyOffset + index * (chunkSize + TAG_BYTES);
+        ByteBuffer target = ByteBuffer.wrap(sealed, 0, sealedLength);
+        while (target.hasRemaining()) {
+            if (channel.read(target, filePosition + target.position()) < 0) {
+                throw new IOException("Chunk " + index + " is truncated");
+            }
+        }
+
+        chunkIndex = -1;
+        try {
+            if (cipher == null) {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+            }
+            chunkIv(index, iv);
+            chunkAad(index, last, aad);
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BYTES * 8, iv));
+            cipher.updateAAD(aad);
+            chunkLength = cipher.doFinal(sealed, 0, sealedLength, chunk, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + index + " failed authentication", e);
+        }
+        chunkIndex = index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
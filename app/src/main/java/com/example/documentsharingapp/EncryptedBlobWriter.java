@@ -0,0 +1,167 @@
+package com.example.documentsharingapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Writes a document in the {@link EncryptedBlob} format as its content is
+ * streamed in, so importing encrypts without a plaintext copy ever
+ * touching the disk.
+ *
+ * A full chunk is only sealed once more content arrives, because the last
+ * chunk is sealed differently and which one is last is known only at
+ * {@link #close()}.
+ */
+public class EncryptedBlobWriter extends OutputStream {
+
+    private final DataOutputStream out;
+    private final SecretKey dataKey;
+    private final Cipher cipher;
+    private final byte[] chunk = new byte[EncryptedBlob.CHUNK_SIZE];
+    private final byte[] sealed = new byte[EncryptedBlob.CHUNK_SIZE + EncryptedBlob.TAG_BYTES];
+    private final byte[] iv = new byte[EncryptedBlob.IV_BYTES];
+    private final byte[] aad = new byte[EncryptedBlob.AAD_BYTES];
+    private int filled;
+    private long chunkIndex;
+    private boolean closed;
+
+    private EncryptedBlobWriter(DataOutputStream out, SecretKey dataKey, long chunkIndex) throws IOException {
+        this.out = out;
+        this.dataKey = dataKey;
+        this.chunkIndex = chunkIndex;
+        try {
+            cipher = Cipher.getInstance(EncryptedBlob.TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            out.close();
+            throw new IOException("AES-GCM unavailable", e);
+        }
+    }
+
+    /**
+     * Starts a new document in the given file.
+     */
+    public static EncryptedBlobWriter create(File file) throws IOException {
+        DocumentKeys keys = DocumentKeys.get();
+        SecretKey dataKey = keys.newDataKey();
+        DocumentKeys.WrappedKey wrappedKey = keys.wrap(dataKey);
+
+        DataOutputStream out = openOutput(file, false);
+        try {
+            out.write(EncryptedBlob.MAGIC);
+            out.writeByte(EncryptedBlob.VERSION);
+            out.writeInt(EncryptedBlob.CHUNK_SIZE);
+            out.writeByte(wrappedKey.iv.length);
+            out.write(wrappedKey.iv);
+            out.writeShort(wrappedKey.ciphertext.length);
+            out.write(wrappedKey.ciphertext);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new EncryptedBlobWriter(out, dataKey, 0);
+    }
+
+    /**
+     * Continues a document that was never closed, e.g. an interrupted
+     * download. Whatever follows the last complete chunk is discarded;
+     * {@link #getContentLength()} tells where writing picks up.
+     */
+    public static EncryptedBlobWriter resume(File file) throws IOException {
+        EncryptedBlob.Header header = EncryptedBlob.Header.read(file);
+        if (header.chunkSize != EncryptedBlob.CHUNK_SIZE) {
+            throw new IOException("Cannot resume chunks of " + header.chunkSize + " bytes");
+        }
+        SecretKey dataKey = DocumentKeys.get().unwrap(header.wrappedKey);
+
+        long sealedChunk = EncryptedBlob.CHUNK_SIZE + EncryptedBlob.TAG_BYTES;
+        long completeChunks = (file.length() - header.bodyOffset) / sealedChunk;
+        try (RandomAccessFile truncating = new RandomAccessFile(file, "rw")) {
+            truncating.setLength(header.bodyOffset + completeChunks * sealedChunk);
+        }
+        return new EncryptedBlobWriter(openOutput(file, true), dataKey, completeChunks);
+    }
+
+    private static DataOutputStream openOutput(File file, boolean append) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append),
+                EncryptedBlob.CHUNK_SIZE + EncryptedBlob.TAG_BYTES));
+    }
+
+    /**
+     * Bytes of content written so far, including any not sealed yet.
+     */
+    public long getContentLength() {
+        return chunkIndex * EncryptedBlob.CHUNK_SIZE + filled;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (filled == chunk.length) {
+                sealChunk(false);
+            }
+            int count = Math.min(length, chunk.length - filled);
+            System.arraycopy(buffer, offset, chunk, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void sealChunk(boolean last) throws IOException {
+        try {
+            EncryptedBlob.chunkIv(chunkIndex, iv);
+            EncryptedBlob.chunkAad(chunkIndex, last, aad);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(EncryptedBlob.TAG_BYTES * 8, iv));
+            cipher.updateAAD(aad);
+            int sealedLength = cipher.doFinal(chunk, 0, filled, sealed, 0);
+            out.write(sealed, 0, sealedLength);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt chunk " + chunkIndex, e);
+        }
+        chunkIndex++;
+        filled = 0;
+    }
+
+    /**
+     * Closes the file without sealing the content not yet in a chunk, so
+     * that {@link #resume(File)} can continue it later.
+     */
+    public void abandon() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+    }
+
+    /**
+     * Seals the last chunk and closes the file. The document is incomplete
+     * and unreadable until this returns.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            sealChunk(true);
+        } finally {
+            out.close();
+        }
+    }
+}
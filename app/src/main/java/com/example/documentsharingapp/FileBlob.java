@@ -0,0 +1,37 @@
+package com.example.documentsharingapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A document stored as a plain file.
+ */
+public class FileBlob implements SeekableBlob {
+
+    private final FileInputStream in;
+    private final FileChannel channel;
+
+    public FileBlob(File file) throws IOException {
+        in = new FileInputStream(file);
+        channel = in.getChannel();
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        // Positional reads leave the channel's own position alone
+        return channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
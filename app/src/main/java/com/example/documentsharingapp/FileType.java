@@ -0,0 +1,234 @@
+package com.example.documentsharingapp;
+
+/**
+ * The file types the app tells apart, each with its icon, MIME type and
+ * filter category.
+ *
+ * A document's type is sniffed from its first bytes when it is imported and
+ * stored as a small integer code, so every later lookup is a field read
+ * instead of another look at the file name. Extensions are only used where
+ * the content is ambiguous (an Office container says nothing about which
+ * application wrote it) and for documents imported before types were
+ * recorded.
+ */
+public enum FileType {
+
+    // Codes are stored in the database; never change or reuse one
+    UNKNOWN(1, "*/*", Category.OTHER, R.drawable.ic_file),
+    PDF(2, "application/pdf", Category.PDF, R.drawable.ic_pdf),
+    DOC(3, "application/msword", Category.DOC, R.drawable.ic_doc),
+    DOCX(4, "application/vnd.openxmlformats-officedocument.wordprocessingml.document", Category.DOC, R.drawable.ic_doc),
+    XLS(5, "application/vnd.ms-excel", Category.XLS, R.drawable.ic_xls),
+    XLSX(6, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", Category.XLS, R.drawable.ic_xls),
+    PPT(7, "application/vnd.ms-powerpoint", Category.PPT, R.drawable.ic_ppt),
+    PPTX(8, "application/vnd.openxmlformats-officedocument.presentationml.presentation", Category.PPT, R.drawable.ic_ppt),
+    JPEG(9, "image/jpeg", Category.IMAGE, R.drawable.ic_img),
+    PNG(10, "image/png", Category.IMAGE, R.drawable.ic_img),
+    GIF(11, "image/gif", Category.IMAGE, R.drawable.ic_img),
+    WEBP(12, "image/webp", Category.IMAGE, R.drawable.ic_img);
+
+    /**
+     * The groups the documents screen filters by and the home screen totals.
+     */
+    public enum Category {
+        PDF("PDFs", R.drawable.ic_pdf),
+        DOC("Documents", R.drawable.ic_doc),
+        XLS("Spreadsheets", R.drawable.ic_xls),
+        PPT("Presentations", R.drawable.ic_ppt),
+        IMAGE("Images", R.drawable.ic_img),
+        OTHER("Other files", R.drawable.ic_file);
+
+        private final String label;
+        private final int iconResource;
+
+        Category(String label, int iconResource) {
+            this.label = label;
+            this.iconResource = iconResource;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getIconResource() {
+            return iconResource;
+        }
+    }
+
+    /**
+     * How many leading bytes {@link #sniff} looks at. Enough to see past the
+     * first entries of an Office Open XML archive.
+     */
+    public static final int HEADER_BYTES = 4096;
+
+    /**
+     * Code of documents imported before types were recorded.
+     */
+    public static final int NOT_RECORDED = 0;
+
+    private static final FileType[] BY_CODE;
+
+    static {
+        int maxCode = 0;
+        for (FileType type : values()) {
+            maxCode = Math.max(maxCode, type.code);
+        }
+        BY_CODE = new FileType[maxCode + 1];
+        for (FileType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private static final byte[] PDF_MAGIC = {'%', 'P', 'D', 'F'};
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF_MAGIC = {'G', 'I', 'F', '8'};
+    private static final byte[] RIFF_MAGIC = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP_MAGIC = {'W', 'E', 'B', 'P'};
+    // OLE2 compound file, the container of legacy Office formats
+    private static final byte[] OLE_MAGIC = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    // ZIP local file header, the container of Office Open XML formats
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final byte[] WORD_PART = {'w', 'o', 'r', 'd', '/'};
+    private static final byte[] EXCEL_PART = {'x', 'l', '/'};
+    private static final byte[] POWERPOINT_PART = {'p', 'p', 't', '/'};
+
+    private final int code;
+    private final String mimeType;
+    private final Category category;
+    private final int iconResource;
+
+    FileType(int code, String mimeType, Category category, int iconResource) {
+        this.code = code;
+        this.mimeType = mimeType;
+        this.category = category;
+        this.iconResource = iconResource;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public int getIconResource() {
+        return iconResource;
+    }
+
+    /**
+     * Returns the type with the given stored code, or null for
+     * {@link #NOT_RECORDED} and codes this version does not know.
+     */
+    public static FileType fromCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Identifies a file from its leading bytes, using the name only to tell
+     * apart formats that share a container.
+     * @param header The first bytes of the file.
+     * @param length How many bytes of the header are valid.
+     * @param fileName The display name of the file, which may be misleading or lack an extension.
+     */
+    public static FileType sniff(byte[] header, int length, String fileName) {
+        if (startsWith(header, length, PDF_MAGIC)) {
+            return PDF;
+        } else if (startsWith(header, length, JPEG_MAGIC)) {
+            return JPEG;
+        } else if (startsWith(header, length, PNG_MAGIC)) {
+            return PNG;
+        } else if (startsWith(header, length, GIF_MAGIC)) {
+            return GIF;
+        } else if (startsWith(header, length, RIFF_MAGIC) && regionEquals(header, length, 8, WEBP_MAGIC)) {
+            return WEBP;
+        } else if (startsWith(header, length, OLE_MAGIC)) {
+            FileType named = fromExtension(fileName);
+            return named == XLS || named == PPT ? named : DOC;
+        } else if (startsWith(header, length, ZIP_MAGIC)) {
+            FileType named = fromExtension(fileName);
+            if (named == DOCX || named == XLSX || named == PPTX) {
+                return named;
+            }
+            // The part names of the first entries give the application away
+            if (contains(header, length, WORD_PART)) {
+                return DOCX;
+            } else if (contains(header, length, EXCEL_PART)) {
+                return XLSX;
+            } else if (contains(header, length, POWERPOINT_PART)) {
+                return PPTX;
+            }
+            return UNKNOWN;
+        }
+        // Formats without a signature, such as plain text, fall back to the name
+        return fromExtension(fileName);
+    }
+
+    /**
+     * Guesses the type from the file name alone.
+     */
+    public static FileType fromExtension(String fileName) {
+        if (fileName == null) {
+            return UNKNOWN;
+        } else if (endsWithIgnoreCase(fileName, ".pdf")) {
+            return PDF;
+        } else if (endsWithIgnoreCase(fileName, ".doc")) {
+            return DOC;
+        } else if (endsWithIgnoreCase(fileName, ".docx")) {
+            return DOCX;
+        } else if (endsWithIgnoreCase(fileName, ".xls")) {
+            return XLS;
+        } else if (endsWithIgnoreCase(fileName, ".xlsx")) {
+            return XLSX;
+        } else if (endsWithIgnoreCase(fileName, ".ppt")) {
+            return PPT;
+        } else if (endsWithIgnoreCase(fileName, ".pptx")) {
+            return PPTX;
+        } else if (endsWithIgnoreCase(fileName, ".jpg") || endsWithIgnoreCase(fileName, ".jpeg")) {
+            return JPEG;
+        } else if (endsWithIgnoreCase(fileName, ".png")) {
+            return PNG;
+        } else if (endsWithIgnoreCase(fileName, ".gif")) {
+            return GIF;
+        } else if (endsWithIgnoreCase(fileName, ".webp")) {
+            return WEBP;
+        }
+        return UNKNOWN;
+    }
+
+    // Compares in place instead of lowercasing a copy of the name
+    private static boolean endsWithIgnoreCase(String fileName, String suffix) {
+        return fileName.regionMatches(true, fileName.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        return regionEquals(header, length, 0, magic);
+    }
+
+    private static boolean regionEquals(byte[] header, int length, int offset, byte[] expected) {
+        if (offset + expected.length > length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (header[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(byte[] header, int length, byte[] expected) {
+        for (int offset = 0; offset + expected.length <= length; offset++) {
+            if (regionEquals(header, length, offset, expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -10,6 +10,9 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.firebase.auth.FirebaseAuth;
@@ -20,10 +23,18 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import android.database.Cursor;
 
 /**
@@ -32,10 +43,18 @@ import android.database.Cursor;
  */
 public class HomeActivity extends AppCompatActivity {
 
+    // Tags of the tab fragments in the fragment manager
+    private static final String TAG_HOME = "home";
+    private static final String TAG_DOCUMENTS = "documents";
+    private static final String TAG_PROFILE = "profile";
+    private static final String[] TAB_TAGS = {TAG_HOME, TAG_DOCUMENTS, TAG_PROFILE};
+    private static final int FILE_THREADS = 4;
+
     // Firebase instances
     private FirebaseAuth mAuth;
     private DatabaseReference dbRef;
     private DatabaseReference docRef;
+    private DatabaseReference rootRef;
 
     // UI Components
     private BottomNavigationView bottomNavigationView;
@@ -45,6 +64,15 @@ public class HomeActivity extends AppCompatActivity {
     private ActivityResultLauncher<Intent> documentPickerLauncher;
     private ActivityResultLauncher<Intent> imagePickerLauncher;
 
+    // Imports one document at a time; shared by every instance, so a rotation does not cut one short
+    private static final ExecutorService IMPORTER = Executors.newSingleThreadExecutor();
+
+    // Decodes and re-encodes picked profile pictures off the main thread; shared by every instance
+    private static final ExecutorService IMAGE_PROCESSOR = Executors.newSingleThreadExecutor();
+    // Bulk file operations, a few at a time so a large selection does not flood the disk;
+    // shared by every instance instead of leaking a pool per activity
+    private static final ExecutorService FILE_POOL = Executors.newFixedThreadPool(FILE_THREADS);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -65,11 +93,18 @@ public class HomeActivity extends AppCompatActivity {
         // Set up FAB click listener
         setupFabListener();
 
-        // Set default fragment
+        // Uploads, integrity tracking and the storage budget carry on whichever tab is showing
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            LibraryMaintenance.get(this).start(user.getUid());
+        }
+
+        // Stored documents are verified a slice at a time while the device is idle
+        IntegrityScrubJob.schedule(this);
+
+        // Set default fragment; after a recreation the tabs are restored by the fragment manager
         if (savedInstanceState == null) {
-            getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.fragment_container, new HomeFragment())
-                    .commit();
+            showTab(R.id.nav_home);
         }
     }
 
@@ -80,6 +115,7 @@ public class HomeActivity extends AppCompatActivity {
         mAuth = FirebaseAuth.getInstance();
         dbRef = FirebaseDatabase.getInstance().getReference("users");
         docRef = FirebaseDatabase.getInstance().getReference("documents");
+        rootRef = FirebaseDatabase.getInstance().getReference();
     }
 
     /**
@@ -94,26 +130,60 @@ public class HomeActivity extends AppCompatActivity {
      * Sets up the bottom navigation with item selection listener.
      */
     private void setupBottomNavigation() {
-        bottomNavigationView.setOnItemSelectedListener(item -> {
-            Fragment selectedFragment = null;
-            int itemId = item.getItemId();
-
-            if (itemId == R.id.nav_home) {
-                selectedFragment = new HomeFragment();
-            } else if (itemId == R.id.nav_documents) {
-                selectedFragment = new DocumentsFragment();
-            } else if (itemId == R.id.nav_profile) {
-                selectedFragment = new ProfileFragment();
-            }
+        bottomNavigationView.setOnItemSelectedListener(item -> showTab(item.getItemId()));
+    }
 
-            if (selectedFragment != null) {
-                getSupportFragmentManager().beginTransaction()
-                        .replace(R.id.fragment_container, selectedFragment)
-                        .commit();
-                return true;
-            }
+    /**
+     * Shows the fragment of a tab, creating it the first time. Tab fragments
+     * are kept once created and only hidden, so switching tabs keeps their
+     * views, scroll positions and database listeners. Hidden tabs are held
+     * at STARTED, which pauses them; they defer UI updates until resumed.
+     * @param itemId The menu id of the tab.
+     * @return Whether the id belongs to a tab.
+     */
+    private boolean showTab(int itemId) {
+        String tag = tabTag(itemId);
+        if (tag == null) {
             return false;
-        });
+        }
+
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+        for (String otherTag : TAB_TAGS) {
+            Fragment other = fragmentManager.findFragmentByTag(otherTag);
+            if (other != null && !otherTag.equals(tag) && !other.isHidden()) {
+                transaction.hide(other).setMaxLifecycle(other, Lifecycle.State.STARTED);
+            }
+        }
+
+        Fragment selected = fragmentManager.findFragmentByTag(tag);
+        if (selected == null) {
+            transaction.add(R.id.fragment_container, createTab(itemId), tag);
+        } else {
+            transaction.show(selected).setMaxLifecycle(selected, Lifecycle.State.RESUMED);
+        }
+        transaction.commit();
+        return true;
+    }
+
+    private static String tabTag(int itemId) {
+        if (itemId == R.id.nav_home) {
+            return TAG_HOME;
+        } else if (itemId == R.id.nav_documents) {
+            return TAG_DOCUMENTS;
+        } else if (itemId == R.id.nav_profile) {
+            return TAG_PROFILE;
+        }
+        return null;
+    }
+
+    private static Fragment createTab(int itemId) {
+        if (itemId == R.id.nav_documents) {
+            return new DocumentsFragment();
+        } else if (itemId == R.id.nav_profile) {
+            return new ProfileFragment();
+        }
+        return new HomeFragment();
     }
 
     /**
@@ -164,48 +234,74 @@ public class HomeActivity extends AppCompatActivity {
 
     /**
      * Saves the selected document to local storage and updates the database.
+     * The copy runs in the background; the database is updated on the main
+     * thread once the document is complete.
      * @param docUri The URI of the selected document.
      */
     private void saveDocument(Uri docUri) {
         FirebaseUser user = mAuth.getCurrentUser();
         if (user == null) return;
 
-        try {
-            String fileName = getFileNameFromUri(docUri);
-            if (fileName == null) {
-                fileName = "unnamed_" + System.currentTimeMillis() + ".file";
-            }
-
-            File docDir = new File(getFilesDir(), "documents");
+        File docDir = new File(getFilesDir(), "documents");
+        LibraryMaintenance maintenance = LibraryMaintenance.get(this);
+        IMPORTER.execute(() -> {
+            String name = getFileNameFromUri(docUri);
+            String fileName = name != null ? name : "unnamed_" + System.currentTimeMillis() + ".file";
             if (!docDir.exists()) {
                 docDir.mkdirs();
             }
             File docFile = new File(docDir, fileName);
-
-            InputStream inputStream = getContentResolver().openInputStream(docUri);
-            FileOutputStream outputStream = new FileOutputStream(docFile);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+            // Written under a temporary name, so a partial import is never taken for a document
+            File tempFile = new File(docDir, fileName + ".tmp");
+
+            // Hash the content while copying so derived data (thumbnails, etc.) can be keyed by it
+            MessageDigest digest = ContentHash.newDigest();
+            // Keep the leading bytes so the type is detected from the content, not the name
+            byte[] header = new byte[FileType.HEADER_BYTES];
+            int headerLength = 0;
+            long contentLength = 0;
+            try {
+                // Encrypted chunk by chunk as it is copied; no plaintext copy reaches the disk
+                try (InputStream inputStream = getContentResolver().openInputStream(docUri);
+                     OutputStream outputStream = DocumentStore.create(tempFile)) {
+                    if (inputStream == null) {
+                        throw new IOException("Cannot read " + fileName);
+                    }
+                    byte[] buffer = new byte[64 * 1024];
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, bytesRead);
+                        contentLength += bytesRead;
+                        digest.update(buffer, 0, bytesRead);
+                        if (headerLength < header.length) {
+                            int headerBytes = Math.min(bytesRead, header.length - headerLength);
+                            System.arraycopy(buffer, 0, header, headerLength, headerBytes);
+                            headerLength += headerBytes;
+                        }
+                    }
+                }
+                if (!tempFile.renameTo(docFile)) {
+                    throw new IOException("Failed to save " + fileName);
+                }
+            } catch (IOException | RuntimeException e) {
+                tempFile.delete();
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(), "Error: " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show());
+                return;
             }
-            inputStream.close();
-            outputStream.close();
 
             String localPath = docFile.getAbsolutePath();
-            saveDocumentToDatabase(fileName, localPath);
-
-            // Show success message
-            Toast.makeText(this, "Document uploaded successfully", Toast.LENGTH_SHORT).show();
-
-            // Refresh the current fragment if it's DocumentsFragment
-            Fragment currentFragment = getSupportFragmentManager().findFragmentById(R.id.fragment_container);
-            if (currentFragment instanceof DocumentsFragment) {
-                ((DocumentsFragment) currentFragment).loadDocuments();
-            }
-        } catch (Exception e) {
-            Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+            FileType fileType = FileType.sniff(header, headerLength, fileName);
+            String contentHash = ContentHash.toHex(digest.digest());
+            long size = contentLength;
+            maintenance.recordImport(docFile, contentHash);
+            runOnUiThread(() -> {
+                // Saved even if the activity went away meanwhile, so the file is never orphaned
+                saveDocumentToDatabase(fileName, localPath, size, contentHash, fileType);
+                // DocumentsFragment picks up the new entry through its listener
+                Toast.makeText(getApplicationContext(), "Document uploaded successfully", Toast.LENGTH_SHORT).show();
+            });
+        });
     }
 
     /**
@@ -216,39 +312,37 @@ public class HomeActivity extends AppCompatActivity {
         FirebaseUser user = mAuth.getCurrentUser();
         if (user == null) return;
 
-        try {
-            File profileDir = new File(getFilesDir(), "profile_pictures");
-            if (!profileDir.exists()) {
-                profileDir.mkdirs();
-            }
-            String fileName = user.getUid() + ".jpg";
-            File profileFile = new File(profileDir, fileName);
-
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            FileOutputStream outputStream = new FileOutputStream(profileFile);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            inputStream.close();
-            outputStream.close();
+        File profileDir = new File(getFilesDir(), "profile_pictures");
+        if (!profileDir.exists()) {
+            profileDir.mkdirs();
+        }
 
-            String localPath = profileFile.getAbsolutePath();
-            saveProfileToDatabase(localPath);
+        // Orient, crop and pre-size the picture once so no screen decodes the camera original
+        IMAGE_PROCESSOR.execute(() -> {
+            try {
+                String localPath = ProfileImageProcessor.process(getContentResolver(), imageUri, profileDir, user.getUid());
+                runOnUiThread(() -> {
+                    // Saved even if the activity went away meanwhile, like an imported document
+                    saveProfileToDatabase(localPath);
+                    if (isDestroyed()) {
+                        return;
+                    }
 
-            // Show success message
-            Toast.makeText(this, "Profile picture updated successfully", Toast.LENGTH_SHORT).show();
+                    // Show success message
+                    Toast.makeText(this, "Profile picture updated successfully", Toast.LENGTH_SHORT).show();
 
-            // Update the profile image in the ProfileFragment immediately
-            Fragment currentFragment = getSupportFragmentManager().findFragmentById(R.id.fragment_container);
-            if (currentFragment instanceof ProfileFragment) {
-                ((ProfileFragment) currentFragment).updateProfileImage(Uri.fromFile(profileFile));
+                    // Update the profile image in the ProfileFragment immediately
+                    Fragment profileFragment = getSupportFragmentManager().findFragmentByTag(TAG_PROFILE);
+                    if (profileFragment instanceof ProfileFragment) {
+                        ((ProfileFragment) profileFragment).updateProfileImage(localPath);
+                    }
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> Toast.makeText(getApplicationContext(), "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
             }
-        } catch (Exception e) {
-            Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+        });
     }
+
     /**
      * Retrieves the original filename from a Uri using ContentResolver.
      * @param uri The Uri of the file.
@@ -314,24 +408,259 @@ public class HomeActivity extends AppCompatActivity {
      * Saves document metadata to the Realtime Database.
      * @param fileName The name of the document.
      * @param localPath The local file path of the document.
+     * @param size The size of the document in bytes.
+     * @param contentHash The SHA-256 hash of the document's content.
+     * @param fileType The type detected from the document's content.
      */
-    private void saveDocumentToDatabase(String fileName, String localPath) {
+    private void saveDocumentToDatabase(String fileName, String localPath, long size, String contentHash, FileType fileType) {
         FirebaseUser user = mAuth.getCurrentUser();
         if (user != null) {
             Map<String, Object> metadata = new HashMap<>();
             metadata.put("fileName", fileName);
             metadata.put("localPath", localPath);
             metadata.put("timestamp", System.currentTimeMillis());
+            metadata.put("size", size);
+            metadata.put("contentHash", contentHash);
+            metadata.put("fileType", fileType.getCode());
 
             docRef.child(user.getUid()).push().setValue(metadata)
                     .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
         }
     }
 
+    /**
+     * Files a document under a folder.
+     * @param document The document to move.
+     * @param folder The folder name, or null to take the document out of its folder.
+     */
+    public void moveDocument(Document document, String folder) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            docRef.child(user.getUid()).child(document.getKey()).child("folder").setValue(folder)
+                    .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+        }
+    }
+
+    /**
+     * Replaces the tags of a document.
+     * @param document The document to tag.
+     * @param tags The new tag names.
+     */
+    public void setDocumentTags(Document document, Collection<String> tags) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            Map<String, Object> tagMap = new HashMap<>();
+            for (String tag : tags) {
+                tagMap.put(tag, true);
+            }
+            docRef.child(user.getUid()).child(document.getKey()).child("tags").setValue(tagMap)
+                    .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+        }
+    }
+
+    /**
+     * Shares a document with the user registered under an email address.
+     * @param document The document to share.
+     * @param recipientEmail The email address of the recipient's profile.
+     */
+    public void shareDocument(Document document, String recipientEmail) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) return;
+
+        // Recipients are looked up by the email on their profile
+        dbRef.orderByChild("email").equalTo(recipientEmail).limitToFirst(1)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot snapshot) {
+                        if (!snapshot.hasChildren()) {
+                            Toast.makeText(HomeActivity.this, "No user found with that email", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        String recipientUid = snapshot.getChildren().iterator().next().getKey();
+                        if (user.getUid().equals(recipientUid)) {
+                            Toast.makeText(HomeActivity.this, "You cannot share a document with yourself", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        // Sharing twice would count the document twice; the database rules refuse it too
+                        if (document.getSharedWith().containsKey(recipientUid)) {
+                            Toast.makeText(HomeActivity.this, "Already shared with " + recipientEmail, Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+
+                        Map<String, Object> updates = new HashMap<>();
+                        ShareIndex.addShare(updates, user.getUid(), user.getEmail(), document, recipientUid);
+                        rootRef.updateChildren(updates)
+                                .addOnSuccessListener(aVoid -> Toast.makeText(HomeActivity.this, "Shared with " + recipientEmail, Toast.LENGTH_SHORT).show())
+                                .addOnFailureListener(e -> Toast.makeText(HomeActivity.this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        Toast.makeText(HomeActivity.this, "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    /**
+     * Deletes a document's metadata, its shares and its local file.
+     * @param document The document to delete.
+     */
+    public void deleteDocument(Document document) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            // Withdraw the shares in the same update so no inbox keeps a dangling entry
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("documents/" + user.getUid() + "/" + document.getKey(), null);
+            ShareIndex.addUnshareAll(updates, user.getUid(), document);
+            rootRef.updateChildren(updates)
+                    .addOnSuccessListener(aVoid -> new File(document.getLocalPath()).delete())
+                    .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+        }
+    }
+
+    /**
+     * Files several documents under a folder in one database write.
+     * @param documents The documents to move.
+     * @param folder The folder name, or null to take the documents out of their folders.
+     */
+    public void moveDocuments(Collection<Document> documents, String folder) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            Map<String, Object> updates = new HashMap<>();
+            for (Document document : documents) {
+                updates.put("documents/" + user.getUid() + "/" + document.getKey() + "/folder", folder);
+            }
+            commitBatch(updates, "Moved " + documents.size() + " documents");
+        }
+    }
+
+    /**
+     * Adds tags to several documents in one database write, keeping the
+     * tags they already have.
+     * @param documents The documents to tag.
+     * @param tags The tag names to add.
+     */
+    public void addDocumentTags(Collection<Document> documents, Collection<String> tags) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null && !tags.isEmpty()) {
+            Map<String, Object> updates = new HashMap<>();
+            for (Document document : documents) {
+                for (String tag : tags) {
+                    updates.put("documents/" + user.getUid() + "/" + document.getKey() + "/tags/" + tag, true);
+                }
+            }
+            commitBatch(updates, "Tagged " + documents.size() + " documents");
+        }
+    }
+
+    /**
+     * Shares several documents with the user registered under an email
+     * address, looking the recipient up once and writing every share in one
+     * database write. Documents already shared with them are skipped.
+     * @param documents The documents to share.
+     * @param recipientEmail The email address of the recipient's profile.
+     */
+    public void shareDocuments(Collection<Document> documents, String recipientEmail) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) return;
+
+        dbRef.orderByChild("email").equalTo(recipientEmail).limitToFirst(1)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot snapshot) {
+                        if (!snapshot.hasChildren()) {
+                            Toast.makeText(HomeActivity.this, "No user found with that email", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        String recipientUid = snapshot.getChildren().iterator().next().getKey();
+                        if (user.getUid().equals(recipientUid)) {
+                            Toast.makeText(HomeActivity.this, "You cannot share a document with yourself", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+
+                        Map<String, Object> updates = new HashMap<>();
+                        int shared = 0;
+                        for (Document document : documents) {
+                            if (!document.getSharedWith().containsKey(recipientUid)) {
+                                ShareIndex.addShare(updates, user.getUid(), user.getEmail(), document, recipientUid);
+                                shared++;
+                            }
+                        }
+                        if (shared == 0) {
+                            Toast.makeText(HomeActivity.this, "Already shared with " + recipientEmail, Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        commitBatch(updates, "Shared " + shared + " documents with " + recipientEmail);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                        Toast.makeText(HomeActivity.this, "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
+    /**
+     * Deletes several documents: their metadata and shares in one database
+     * write, then their local files in parallel. Reports once, when every
+     * file is gone.
+     * @param documents The documents to delete.
+     */
+    public void deleteDocuments(Collection<Document> documents) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) return;
+
+        Map<String, Object> updates = new HashMap<>();
+        List<File> files = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            updates.put("documents/" + user.getUid() + "/" + document.getKey(), null);
+            ShareIndex.addUnshareAll(updates, user.getUid(), document);
+            if (document.getLocalPath() != null) {
+                files.add(new File(document.getLocalPath()));
+            }
+        }
+        int count = documents.size();
+        rootRef.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> deleteFiles(files, () ->
+                        Toast.makeText(this, "Deleted " + count + " documents", Toast.LENGTH_SHORT).show()))
+                .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Applies a multi-path update relative to the database root, reporting
+     * its outcome once.
+     */
+    private void commitBatch(Map<String, Object> updates, String successMessage) {
+        rootRef.updateChildren(updates)
+                .addOnSuccessListener(aVoid -> Toast.makeText(this, successMessage, Toast.LENGTH_SHORT).show())
+                .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Deletes files on the file pool and runs a callback on the main thread
+     * once all of them are done.
+     */
+    private void deleteFiles(List<File> files, Runnable onDone) {
+        if (files.isEmpty()) {
+            onDone.run();
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(files.size());
+        for (File file : files) {
+            FILE_POOL.execute(() -> {
+                file.delete();
+                if (remaining.decrementAndGet() == 0) {
+                    runOnUiThread(onDone);
+                }
+            });
+        }
+    }
+
     /**
      * Signs out the current user and returns to the login screen.
      */
     public void signOut() {
+        LibraryMaintenance.get(this).stop();
         mAuth.signOut();
         startActivity(new Intent(this, MainActivity.class));
         finish();
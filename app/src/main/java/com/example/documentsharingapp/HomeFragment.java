@@ -1,6 +1,6 @@
 package com.example.documentsharingapp;
 
-import android.net.Uri;
+import android.content.Intent;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -12,21 +12,23 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.ValueEventListener;
 import de.hdodenhof.circleimageview.CircleImageView;
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class HomeFragment extends Fragment {
 
+    private static final int RECENT_COUNT = 3;
+
     private TextView userName;
     private TextView totalDocuments;
     private TextView recentDocuments;
@@ -36,13 +38,26 @@ public class HomeFragment extends Fragment {
     private RecyclerView categoriesRecycler;
     private EditText searchInput;
     private TextView viewAllRecent;
+    private View sharedStat;
 
     private HomeActivity homeActivity;
     private DatabaseReference docRef;
     private FirebaseUser currentUser;
-    private List<Document> documentList = new ArrayList<>();
+    private ChildEventListener documentListener;
+    private DatabaseReference sharedCountRef;
+    private ValueEventListener sharedCountListener;
+    private TopDocuments topDocuments;
+    // Documents received since the last refresh, ranked and counted once their row labels are prepared
+    private final DisplayModelBatcher pendingDocuments = new DisplayModelBatcher(this::onDocumentsReady);
     private List<Document> filteredDocumentList = new ArrayList<>();
     private RecentDocumentAdapter recentAdapter;
+    private LibraryStats libraryStats = new LibraryStats();
+    private CategoryAdapter categoryAdapter;
+    private AccessLog accessLog;
+    private final AccessLog.Listener accessListener = this::onAccessRecorded;
+    private final Runnable refreshRunnable = this::refreshDocuments;
+    // Set when a refresh was requested while the tab was paused
+    private boolean refreshDeferred;
 
     @Nullable
     @Override
@@ -56,15 +71,20 @@ public class HomeFragment extends Fragment {
             currentUser = homeActivity.getCurrentUser();
         }
 
+        // Documents opened most often and most recently come first, then the newest uploads
+        accessLog = AccessLog.get(requireContext());
+        topDocuments = new TopDocuments(RECENT_COUNT, document -> accessLog.getScore(document.getKey()));
+        accessLog.addListener(accessListener);
+
         // Initialize UI components
         initializeUiComponents(view);
 
         // Set up recycler views
         setupRecyclerViews();
 
-        // Load user data and documents
-        loadUserData();
+        // Load documents; user data is loaded whenever the tab is resumed
         loadDocuments();
+        loadSharedCount();
 
         // Set up click listeners and search functionality
         setupListeners();
@@ -82,18 +102,33 @@ public class HomeFragment extends Fragment {
         categoriesRecycler = view.findViewById(R.id.categoriesRecycler);
         searchInput = view.findViewById(R.id.searchInput);
         viewAllRecent = view.findViewById(R.id.viewAllRecent);
+        sharedStat = view.findViewById(R.id.sharedStat);
     }
 
     private void setupRecyclerViews() {
         // Set up recent documents recycler view
-        recentDocumentsRecycler.setLayoutManager(new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false));
-        filteredDocumentList.addAll(documentList); // Initialize filtered list with all documents
+        LinearLayoutManager recentLayoutManager = new LinearLayoutManager(getContext(), LinearLayoutManager.HORIZONTAL, false);
+        recentDocumentsRecycler.setLayoutManager(recentLayoutManager);
         recentAdapter = new RecentDocumentAdapter(filteredDocumentList);
         recentDocumentsRecycler.setAdapter(recentAdapter);
+        new ViewportPrefetcher(recentLayoutManager, recentAdapter, ThumbnailLoader.get(requireContext()))
+                .attach(recentDocumentsRecycler);
 
-        // Set up categories recycler view (placeholder)
-        categoriesRecycler.setLayoutManager(new LinearLayoutManager(getContext()));
-        // categoriesRecycler.setAdapter(new CategoryAdapter());
+        // Set up categories recycler view with file category, folder and tag totals
+        categoriesRecycler.setLayoutManager(new GridLayoutManager(getContext(), 2));
+        categoryAdapter = new CategoryAdapter();
+        categoriesRecycler.setAdapter(categoryAdapter);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // The name or picture may have been edited while the tab was away
+        loadUserData();
+        if (refreshDeferred) {
+            refreshDeferred = false;
+            scheduleRefresh();
+        }
     }
 
     private void loadUserData() {
@@ -110,12 +145,8 @@ public class HomeFragment extends Fragment {
                         }
 
                         String localPath = snapshot.child("profilePicture").getValue(String.class);
-                        if (localPath != null) {
-                            File imageFile = new File(localPath);
-                            if (imageFile.exists()) {
-                                profileImage.setImageURI(Uri.fromFile(imageFile));
-                            }
-                        }
+                        // Decoded off the main thread at the view's size and shared across screens
+                        AvatarCache.get(requireContext()).load(localPath, profileImage);
                     }
                 }
 
@@ -129,38 +160,54 @@ public class HomeFragment extends Fragment {
 
     private void loadDocuments() {
         if (currentUser != null) {
-            docRef.child(currentUser.getUid()).addValueEventListener(new ValueEventListener() {
+            // Child events let the stats and the top documents be updated per
+            // document instead of walking the whole library on every change
+            documentListener = docRef.child(currentUser.getUid()).addChildEventListener(new ChildEventListener() {
                 @Override
-                public void onDataChange(@NonNull DataSnapshot snapshot) {
-                    documentList.clear();
-                    int count = 0;
-                    for (DataSnapshot docSnapshot : snapshot.getChildren()) {
-                        Document doc = docSnapshot.getValue(Document.class);
-                        if (doc != null) {
-                            documentList.add(doc);
-                            count++;
-                        }
+                public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                    Document doc = snapshot.getValue(Document.class);
+                    if (doc != null) {
+                        doc.setKey(snapshot.getKey());
+                        pendingDocuments.put(doc);
+                        scheduleRefresh();
                     }
+                }
 
-                    // Sort by timestamp (most recent first)
-                    Collections.sort(documentList, (d1, d2) -> Long.compare(d2.getTimestamp(), d1.getTimestamp()));
+                @Override
+                public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                    onChildAdded(snapshot, previousChildName);
+                }
 
-                    // Update UI with document counts
-                    totalDocuments.setText(String.valueOf(count));
+                @Override
+                public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                    pendingDocuments.remove(snapshot.getKey());
+                    topDocuments.remove(snapshot.getKey());
+                    libraryStats.remove(snapshot.getKey());
+                    scheduleRefresh();
+                }
 
-                    // Show only the most recent 3 documents initially
-                    List<Document> recentDocs = new ArrayList<>();
-                    for (int i = 0; i < Math.min(3, documentList.size()); i++) {
-                        recentDocs.add(documentList.get(i));
-                    }
+                @Override
+                public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                    // Ranking does not depend on database order
+                }
 
-                    recentDocuments.setText(String.valueOf(recentDocs.size()));
-                    sharedDocuments.setText("0"); // Implement shared count logic
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    // Handle error
+                }
+            });
+        }
+    }
 
-                    // Update filtered list and recycler view
-                    filteredDocumentList.clear();
-                    filteredDocumentList.addAll(recentDocs);
-                    filterDocuments(searchInput.getText().toString()); // Apply current search query
+    private void loadSharedCount() {
+        if (currentUser != null) {
+            // A counter kept up to date by every share, so the inbox itself is never read here
+            sharedCountRef = ShareIndex.receivedCount(currentUser.getUid());
+            sharedCountListener = sharedCountRef.addValueEventListener(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    Long count = snapshot.getValue(Long.class);
+                    sharedDocuments.setText(String.valueOf(count != null ? count : 0));
                 }
 
                 @Override
@@ -171,6 +218,70 @@ public class HomeFragment extends Fragment {
         }
     }
 
+    /**
+     * Coalesces a burst of child events (such as the initial load) into a
+     * single UI update on the next frame. While the tab is hidden, changes
+     * only accumulate and are applied in one refresh when it is shown.
+     */
+    private void scheduleRefresh() {
+        if (!isResumed()) {
+            refreshDeferred = true;
+            return;
+        }
+        recentDocumentsRecycler.removeCallbacks(refreshRunnable);
+        recentDocumentsRecycler.post(refreshRunnable);
+    }
+
+    private void onDocumentsReady(List<Document> documents) {
+        for (Document doc : documents) {
+            topDocuments.put(doc);
+            libraryStats.put(doc);
+        }
+        scheduleRefresh();
+    }
+
+    private void refreshDocuments() {
+        // New and changed documents follow in onDocumentsReady
+        pendingDocuments.flush();
+
+        // Update UI with document counts
+        totalDocuments.setText(String.valueOf(topDocuments.size()));
+
+        // Update filtered list and recycler view
+        filterDocuments(searchInput.getText().toString()); // Apply current search query
+
+        // File categories first, then folders, then tags
+        List<LibraryStats.Bucket> categories = new ArrayList<>(libraryStats.getTypes());
+        categories.addAll(libraryStats.getFolders());
+        categories.addAll(libraryStats.getTags());
+        categoryAdapter.setBuckets(categories);
+    }
+
+    private void onAccessRecorded(String documentKey) {
+        if (documentKey != null) {
+            topDocuments.rescore(documentKey);
+        } else {
+            topDocuments.rescoreAll();
+        }
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        recentDocumentsRecycler.removeCallbacks(refreshRunnable);
+        pendingDocuments.clear();
+        accessLog.removeListener(accessListener);
+        if (documentListener != null) {
+            docRef.child(currentUser.getUid()).removeEventListener(documentListener);
+            documentListener = null;
+        }
+        if (sharedCountListener != null) {
+            sharedCountRef.removeEventListener(sharedCountListener);
+            sharedCountListener = null;
+        }
+    }
+
     private void setupListeners() {
         viewAllRecent.setOnClickListener(v -> {
             if (homeActivity != null) {
@@ -178,6 +289,9 @@ public class HomeFragment extends Fragment {
             }
         });
 
+        sharedStat.setOnClickListener(v ->
+                startActivity(new Intent(getActivity(), SharedWithMeActivity.class)));
+
         // Add search functionality
         searchInput.addTextChangedListener(new TextWatcher() {
             @Override
@@ -199,14 +313,13 @@ public class HomeFragment extends Fragment {
     private void filterDocuments(String query) {
         filteredDocumentList.clear();
         if (query.isEmpty()) {
-            // Show up to 3 most recent documents when query is empty
-            for (int i = 0; i < Math.min(3, documentList.size()); i++) {
-                filteredDocumentList.add(documentList.get(i));
-            }
+            // Show the top-ranked documents when query is empty
+            topDocuments.copyTopInto(filteredDocumentList);
         } else {
-            // Filter based on query
-            for (Document doc : documentList) {
-                if (doc.getFileName().toLowerCase().contains(query.toLowerCase())) {
+            // Matches keep their rank, best first
+            String lowerQuery = query.toLowerCase();
+            for (Document doc : topDocuments.all()) {
+                if (doc.getFileName().toLowerCase().contains(lowerQuery)) {
                     filteredDocumentList.add(doc);
                 }
             }
@@ -0,0 +1,169 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Renders regions of a single large image with {@link BitmapRegionDecoder}.
+ *
+ * Only the requested region is decoded, subsampled by the largest power of
+ * two the scale allows, so the cost of a tile depends on the tile and not on
+ * the image. A preview of the whole image decodes at a high sample size and
+ * stays small even for images of tens of megapixels.
+ *
+ * Photos stored sideways with an EXIF orientation are shown upright: page
+ * sizes and regions are in the rotated, displayed frame, each region is
+ * mapped back to the stored pixels for decoding, and the decoded tile is
+ * rotated into place.
+ */
+public class ImageTileSource implements TileSource {
+
+    private final ParcelFileDescriptor descriptor;
+    private final BitmapRegionDecoder decoder;
+    // Clockwise, one of 0, 90, 180 and 270
+    private final int rotation;
+    private final Matrix rotationMatrix = new Matrix();
+    private final Rect displayRegion = new Rect();
+    private final Rect sourceRegion = new Rect();
+
+    /**
+     * Opens the image and reads its header and orientation. Does I/O, so
+     * call it off the main thread.
+     */
+    public ImageTileSource(Context context, File file) throws IOException {
+        rotation = readRotation(file);
+        rotationMatrix.postRotate(rotation);
+        // A seekable descriptor lets the decoder read just the parts a region needs
+        descriptor = DocumentStore.openDescriptor(context, file);
+        try {
+            decoder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                    ? BitmapRegionDecoder.newInstance(descriptor)
+                    : newLegacyDecoder(descriptor);
+        } catch (IOException | RuntimeException e) {
+            descriptor.close();
+            throw e;
+        }
+    }
+
+    private static int readRotation(File file) {
+        int orientation;
+        try (InputStream in = DocumentStore.openStream(file)) {
+            orientation = new ExifInterface(in).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            // Without readable metadata the image is shown as stored
+            return 0;
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    // The descriptor overload needs API 31
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newLegacyDecoder(ParcelFileDescriptor descriptor) throws IOException {
+        return BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+    }
+
+    /**
+     * Whether the region decoder supports files of this type.
+     */
+    public static boolean canDecode(FileType type) {
+        return type == FileType.JPEG || type == FileType.PNG || type == FileType.WEBP;
+    }
+
+    @Override
+    public int getPageCount() {
+        return 1;
+    }
+
+    @Override
+    public int getPageWidth(int page) {
+        return rotation % 180 == 0 ? decoder.getWidth() : decoder.getHeight();
+    }
+
+    @Override
+    public int getPageHeight(int page) {
+        return rotation % 180 == 0 ? decoder.getHeight() : decoder.getWidth();
+    }
+
+    @Override
+    public boolean measurePages(int maxPages) {
+        // The size of the only page is read with the header
+        return false;
+    }
+
+    @Override
+    public Bitmap renderRegion(int page, Rect region, float scale) throws IOException {
+        displayRegion.set((int) (region.left / scale), (int) (region.top / scale),
+                (int) Math.ceil(region.right / scale), (int) Math.ceil(region.bottom / scale));
+        if (!displayRegion.intersect(0, 0, getPageWidth(page), getPageHeight(page))) {
+            return null;
+        }
+        toSourceRegion(displayRegion, sourceRegion);
+
+        // Largest power of two that keeps at least one source pixel per screen pixel
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = decoder.decodeRegion(sourceRegion, options);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode region " + sourceRegion);
+        }
+        if (rotation == 0) {
+            return bitmap;
+        }
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                rotationMatrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    // Maps a region of the displayed, rotated image onto the stored pixels
+    private void toSourceRegion(Rect display, Rect source) {
+        int width = decoder.getWidth();
+        int height = decoder.getHeight();
+        switch (rotation) {
+            case 90:
+                source.set(display.top, height - display.right, display.bottom, height - display.left);
+                break;
+            case 180:
+                source.set(width - display.right, height - display.bottom, width - display.left, height - display.top);
+                break;
+            case 270:
+                source.set(width - display.bottom, display.left, width - display.top, display.right);
+                break;
+            default:
+                source.set(display);
+                break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoder.recycle();
+        descriptor.close();
+    }
+}
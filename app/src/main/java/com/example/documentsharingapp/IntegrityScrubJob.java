@@ -0,0 +1,67 @@
+package com.example.documentsharingapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link IntegrityScrubber} a slice at a time while the device is
+ * idle and its battery is not low. The system stops a run as soon as
+ * either stops being true.
+ */
+public class IntegrityScrubJob extends JobService {
+
+    private static final int JOB_ID = 1001;
+    private static final long INTERVAL_MS = TimeUnit.HOURS.toMillis(12);
+    // Read per run; the whole library is verified over as many runs as it takes
+    private static final long BYTES_PER_RUN = 256L * 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopRequested;
+
+    /**
+     * Schedules the periodic scrub unless it already is. Not persisted across
+     * reboots, so it is scheduled again whenever the app starts.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, IntegrityScrubJob.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .setPeriodic(INTERVAL_MS)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopRequested = false;
+        executor.execute(() -> {
+            IntegrityScrubber.get(this).scrub(BYTES_PER_RUN, () -> stopRequested);
+            jobFinished(params, false);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopRequested = true;
+        // The next periodic run picks up with the least recently verified files
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks in the background that stored documents still hold the content
+ * they were imported with, so damage from storage errors or partial writes
+ * shows in the lists instead of surfacing as a failed open.
+ *
+ * Each document's file is tracked with the content hash recorded in its
+ * metadata. A scrub reads files back through {@link DocumentStore}, which
+ * fails on any chunk whose authentication tag does not match, and compares
+ * the hash of what it read with the recorded one. Each run reads at most a
+ * given number of bytes, least recently verified files first, so the whole
+ * library is covered over several runs without any one of them costing
+ * much. Runs are started by {@link IntegrityScrubJob}.
+ */
+public class IntegrityScrubber {
+
+    /**
+     * What is wrong with a document's file.
+     */
+    public enum Problem {
+        // Ordinals are saved; only ever append
+        DAMAGED("Damaged"),
+        MISSING("Missing");
+
+        private final String label;
+
+        Problem(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread after the problem of any document changed.
+         */
+        void onProblemsChanged();
+    }
+
+    private static final String TAG = "IntegrityScrubber";
+    private static final String STATE_FILE_NAME = "integrity.bin";
+    private static final int STATE_VERSION = 1;
+
+    private static IntegrityScrubber instance;
+
+    private final File stateFile;
+    private final BlobSync blobSync;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final List<Listener> listeners = new ArrayList<>();
+    // By local path; guarded by this
+    private final Map<String, Record> records = new HashMap<>();
+    private boolean savePending;
+
+    public static synchronized IntegrityScrubber get(Context context) {
+        if (instance == null) {
+            instance = new IntegrityScrubber(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private IntegrityScrubber(Context context) {
+        stateFile = new File(context.getFilesDir(), STATE_FILE_NAME);
+        blobSync = BlobSync.get(context);
+        writer.execute(this::load);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tracks the file of a document, or picks up a new content hash of one
+     * already tracked. Call it whenever the document's metadata is read.
+     */
+    public void track(Document document) {
+        String localPath = document.getLocalPath();
+        if (localPath == null) {
+            return;
+        }
+        synchronized (this) {
+            Record record = records.get(localPath);
+            if (record != null && equal(record.contentHash, document.getContentHash())) {
+                return;
+            }
+            records.put(localPath, new Record(document.getContentHash(), 0, null));
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Stops tracking a file, e.g. after its document was deleted.
+     */
+    public void untrack(String localPath) {
+        synchronized (this) {
+            if (localPath == null || records.remove(localPath) == null) {
+                return;
+            }
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Returns what the last scrub found wrong with a document, or null if
+     * nothing was found. A map lookup, so it can be called while binding.
+     */
+    public synchronized Problem getProblem(Document document) {
+        Record record = document.getLocalPath() != null ? records.get(document.getLocalPath()) : null;
+        return record != null && equal(record.contentHash, document.getContentHash()) ? record.problem : null;
+    }
+
+    /**
+     * Verifies files, least recently verified first, until the given number
+     * of bytes was read or the run is asked to stop. Blocks for the whole
+     * run, so call it on a background thread.
+     */
+    public void scrub(long byteBudget, BooleanSupplier stopRequested) {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        List<Map.Entry<String, Record>> queue;
+        synchronized (this) {
+            queue = new ArrayList<>(records.entrySet());
+        }
+        Collections.sort(queue, (a, b) -> Long.compare(a.getValue().verifiedAt, b.getValue().verifiedAt));
+
+        boolean problemsChanged = false;
+        long bytesRead = 0;
+        for (Map.Entry<String, Record> each : queue) {
+            if (bytesRead >= byteBudget || stopRequested.getAsBoolean()) {
+                break;
+            }
+            File file = new File(each.getKey());
+            Record record = each.getValue();
+            bytesRead += file.length();
+            Problem problem = verify(file, record.contentHash);
+
+            synchronized (this) {
+                // Left alone if the document changed while it was being read
+                if (records.get(each.getKey()) == record) {
+                    records.put(each.getKey(), new Record(record.contentHash, System.currentTimeMillis(), problem));
+                    problemsChanged |= problem != record.problem;
+                }
+            }
+        }
+
+        scheduleSave();
+        if (problemsChanged) {
+            mainHandler.post(this::notifyListeners);
+        }
+    }
+
+    private Problem verify(File file, String contentHash) {
+        if (!file.isFile()) {
+            // Evicted to stay within the storage budget, or never on this device
+            return blobSync.isStored(contentHash) ? null : Problem.MISSING;
+        }
+        MessageDigest digest = ContentHash.newDigest();
+        try (InputStream in = DocumentStore.openStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+            return Problem.DAMAGED;
+        }
+        if (contentHash != null && !contentHash.equals(ContentHash.toHex(digest.digest()))) {
+            Log.w(TAG, "Content of " + file + " does not match its hash");
+            return Problem.DAMAGED;
+        }
+        return null;
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onProblemsChanged();
+        }
+    }
+
+    private void scheduleSave() {
+        synchronized (this) {
+            if (savePending) {
+                return;
+            }
+            savePending = true;
+        }
+        writer.execute(this::save);
+    }
+
+    /**
+     * Reads the saved state on the writer thread. Documents tracked before
+     * it finished keep what was tracked, unless their hash is unchanged, in
+     * which case their saved verification carries over.
+     */
+    private void load() {
+        boolean hasProblems = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)))) {
+            if (in.readInt() == STATE_VERSION) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String localPath = in.readUTF();
+                    String contentHash = in.readBoolean() ? in.readUTF() : null;
+                    long verifiedAt = in.readLong();
+                    int problemCode = in.readByte();
+                    Problem problem = problemCode >= 0 ? Problem.values()[problemCode] : null;
+                    synchronized (this) {
+                        Record tracked = records.get(localPath);
+                        if (tracked == null || equal(tracked.contentHash, contentHash)) {
+                            records.put(localPath, new Record(contentHash, verifiedAt, problem));
+                            hasProblems |= problem != null;
+                        }
+                    }
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing verified yet
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable integrity state", e);
+        }
+        loaded.countDown();
+        if (hasProblems) {
+            mainHandler.post(this::notifyListeners);
+        }
+    }
+
+    private void save() {
+        List<Map.Entry<String, Record>> snapshot;
+        synchronized (this) {
+            savePending = false;
+            snapshot = new ArrayList<>(records.entrySet());
+        }
+        File tempFile = new File(stateFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(STATE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Record> each : snapshot) {
+                Record record = each.getValue();
+                out.writeUTF(each.getKey());
+                out.writeBoolean(record.contentHash != null);
+                if (record.contentHash != null) {
+                    out.writeUTF(record.contentHash);
+                }
+                out.writeLong(record.verifiedAt);
+                out.writeByte(record.problem != null ? record.problem.ordinal() : -1);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save integrity state", e);
+            return;
+        }
+        if (!tempFile.renameTo(stateFile)) {
+            Log.w(TAG, "Failed to replace integrity state");
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * The hash a file should have and what its last verification found.
+     * Replaced rather than changed, so a scrub can tell whether the document
+     * changed while it was being read.
+     */
+    private static final class Record {
+        final String contentHash;
+        // 0 until first verified
+        final long verifiedAt;
+        final Problem problem;
+
+        Record(String contentHash, long verifiedAt, Problem problem) {
+            this.contentHash = contentHash;
+            this.verifiedAt = verifiedAt;
+            this.problem = problem;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Background upkeep of the signed-in user's library: uploading content to
+ * {@link BlobSync} and releasing what no document has any more, tracking files for the {@link IntegrityScrubber},
+ * keeping within the {@link StorageBudget}, and following files changed in
+ * place through the {@link DocumentWatcher}.
+ *
+ * It follows the user's documents with a listener of its own for as long
+ * as they are signed in, so none of this depends on which screen is
+ * showing or whether it is resumed. The watcher lives as long as the
+ * process.
+ */
+public class LibraryMaintenance {
+
+    private static LibraryMaintenance instance;
+
+    private final BlobSync blobSync;
+    private final IntegrityScrubber scrubber;
+    private final StorageBudget storageBudget;
+    private final DocumentWatcher documentWatcher;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable enforceBudget = this::enforceBudget;
+    private final Map<String, Document> documents = new HashMap<>();
+    private DatabaseReference userDocuments;
+    private ChildEventListener documentListener;
+    private String uid;
+
+    public static synchronized LibraryMaintenance get(Context context) {
+        if (instance == null) {
+            instance = new LibraryMaintenance(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LibraryMaintenance(Context context) {
+        blobSync = BlobSync.get(context);
+        scrubber = IntegrityScrubber.get(context);
+        storageBudget = StorageBudget.get(context);
+
+        // Documents imported before encryption at rest are encrypted first, then watched
+        File documentDirectory = new File(context.getFilesDir(), "documents");
+        documentWatcher = new DocumentWatcher(documentDirectory, context.getFilesDir(), this::onContentChanged);
+        Executors.newSingleThreadExecutor().execute(() -> {
+            DocumentStore.encryptExisting(documentDirectory);
+            documentWatcher.start();
+        });
+    }
+
+    /**
+     * Records the content hash of a file just imported, so the watcher does
+     * not hash it again.
+     */
+    public void recordImport(File file, String contentHash) {
+        documentWatcher.record(file, contentHash);
+    }
+
+    /**
+     * Starts looking after a user's library, unless it already is. Call it
+     * on the main thread.
+     */
+    public void start(String uid) {
+        if (uid.equals(this.uid)) {
+            return;
+        }
+        stop();
+        this.uid = uid;
+        userDocuments = FirebaseDatabase.getInstance().getReference("documents").child(uid);
+        documentListener = userDocuments.addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                Document document = snapshot.getValue(Document.class);
+                if (document != null) {
+                    document.setKey(snapshot.getKey());
+                    onDocumentChanged(document);
+                }
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                onChildAdded(snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                Document removed = documents.remove(snapshot.getKey());
+                scrubber.untrack(snapshot.child("localPath").getValue(String.class));
+                if (removed != null) {
+                    releaseIfUnused(removed.getContentHash());
+                }
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                // Order does not matter here
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                // Picked up again at the next sign-in
+            }
+        });
+    }
+
+    /**
+     * Stops looking after the library, e.g. when the user signs out.
+     */
+    public void stop() {
+        if (documentListener != null) {
+            userDocuments.removeEventListener(documentListener);
+            documentListener = null;
+        }
+        mainHandler.removeCallbacks(enforceBudget);
+        documents.clear();
+        uid = null;
+    }
+
+    private void onDocumentChanged(Document document) {
+        Document previous = documents.put(document.getKey(), document);
+        // Edited in place; the old content may be in no document any more
+        if (previous != null && previous.getContentHash() != null
+                && !previous.getContentHash().equals(document.getContentHash())) {
+            releaseIfUnused(previous.getContentHash());
+        }
+        // New imports, and documents from before sync, reach the blob store from here
+        blobSync.upload(document);
+        scrubber.track(document);
+        // A burst of changes, such as the initial load, is checked against the budget once
+        mainHandler.removeCallbacks(enforceBudget);
+        mainHandler.post(enforceBudget);
+    }
+
+    /**
+     * Brings the metadata of a document whose file changed on disk up to
+     * date with its new content, including the copies in its recipients'
+     * inboxes. Listeners of the document list then rebuild whatever was
+     * derived from the old content.
+     */
+    private void onContentChanged(File file, String contentHash, long size, FileType fileType) {
+        if (uid == null) {
+            return;
+        }
+        Map<String, Object> updates = new HashMap<>();
+        for (Document document : documents.values()) {
+            if (file.getAbsolutePath().equals(document.getLocalPath())
+                    && !contentHash.equals(document.getContentHash())) {
+                ShareIndex.addContentChange(updates, uid, document.getKey(), document.getSharedWith().keySet(),
+                        contentHash, size, fileType);
+            }
+        }
+        if (!updates.isEmpty()) {
+            FirebaseDatabase.getInstance().getReference().updateChildren(updates);
+        }
+    }
+
+    // Identical files imported twice share their content, which stays while either is left
+    private void releaseIfUnused(String contentHash) {
+        if (contentHash == null) {
+            return;
+        }
+        for (Document document : documents.values()) {
+            if (contentHash.equals(document.getContentHash())) {
+                return;
+            }
+        }
+        blobSync.release(contentHash);
+    }
+
+    private void enforceBudget() {
+        storageBudget.enforce(new ArrayList<>(documents.values()));
+    }
+}
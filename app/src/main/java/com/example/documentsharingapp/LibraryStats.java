@@ -0,0 +1,207 @@
+package com.example.documentsharingapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Per-type, per-folder and per-tag document counts, byte totals and latest
+ * documents for one library.
+ *
+ * The aggregates are adjusted by the difference between the old and new
+ * version of a document on every add, change (such as a move or retag) or
+ * removal, so reading them never requires walking the library. Each bucket
+ * keeps its documents ordered by upload time, which makes finding its latest
+ * document after a removal a lookup rather than a scan.
+ */
+public class LibraryStats {
+
+    public enum Kind {
+        TYPE,
+        FOLDER,
+        TAG
+    }
+
+    /**
+     * Aggregate for one file category, folder or tag. Buckets are owned by
+     * the stats and change in place as documents are applied.
+     */
+    public static final class Bucket {
+        private final Kind kind;
+        private final String name;
+        private final FileType.Category category;
+        private final TreeSet<Contribution> newestFirst = new TreeSet<>();
+        private long bytes;
+
+        Bucket(Kind kind, String name, FileType.Category category) {
+            this.kind = kind;
+            this.name = name;
+            this.category = category;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * The folder or tag name, or the label of the file category.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The file category of a {@link Kind#TYPE} bucket, otherwise null.
+         */
+        public FileType.Category getCategory() {
+            return category;
+        }
+
+        public int getCount() {
+            return newestFirst.size();
+        }
+
+        /**
+         * File name of the most recently uploaded document in the bucket.
+         */
+        public String getLatestName() {
+            return newestFirst.isEmpty() ? null : newestFirst.first().fileName;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // What was counted for each document, so its contribution can be undone
+    private final Map<String, Contribution> contributions = new HashMap<>();
+    private final Map<String, Bucket> types = new HashMap<>();
+    private final Map<String, Bucket> folders = new HashMap<>();
+    private final Map<String, Bucket> tags = new HashMap<>();
+
+    /**
+     * Adds a document or replaces the previous version of it.
+     */
+    public void put(Document document) {
+        remove(document.getKey());
+
+        Contribution contribution = new Contribution(document);
+        contributions.put(document.getKey(), contribution);
+        add(types, Kind.TYPE, contribution.category.name(), contribution);
+        add(folders, Kind.FOLDER, contribution.folder, contribution);
+        for (String tag : contribution.tags) {
+            add(tags, Kind.TAG, tag, contribution);
+        }
+    }
+
+    public void remove(String key) {
+        Contribution contribution = contributions.remove(key);
+        if (contribution == null) {
+            return;
+        }
+        remove(types, contribution.category.name(), contribution);
+        remove(folders, contribution.folder, contribution);
+        for (String tag : contribution.tags) {
+            remove(tags, tag, contribution);
+        }
+    }
+
+    public void clear() {
+        contributions.clear();
+        types.clear();
+        folders.clear();
+        tags.clear();
+    }
+
+    public int getDocumentCount() {
+        return contributions.size();
+    }
+
+    /**
+     * Buckets of the file categories that have documents, in category order.
+     */
+    public List<Bucket> getTypes() {
+        List<Bucket> sorted = new ArrayList<>(types.values());
+        Collections.sort(sorted, (b1, b2) -> b1.category.compareTo(b2.category));
+        return sorted;
+    }
+
+    public List<Bucket> getFolders() {
+        return sortedByName(folders);
+    }
+
+    public List<Bucket> getTags() {
+        return sortedByName(tags);
+    }
+
+    private static void add(Map<String, Bucket> buckets, Kind kind, String name, Contribution contribution) {
+        if (name == null) {
+            return;
+        }
+        Bucket bucket = buckets.get(name);
+        if (bucket == null) {
+            bucket = kind == Kind.TYPE
+                    ? new Bucket(kind, contribution.category.getLabel(), contribution.category)
+                    : new Bucket(kind, name, null);
+            buckets.put(name, bucket);
+        }
+        bucket.newestFirst.add(contribution);
+        bucket.bytes += contribution.bytes;
+    }
+
+    private static void remove(Map<String, Bucket> buckets, String name, Contribution contribution) {
+        Bucket bucket = name != null ? buckets.get(name) : null;
+        if (bucket == null) {
+            return;
+        }
+        bucket.newestFirst.remove(contribution);
+        bucket.bytes -= contribution.bytes;
+        if (bucket.newestFirst.isEmpty()) {
+            buckets.remove(name);
+        }
+    }
+
+    // Sorting only touches the buckets, which are few compared to documents
+    private static List<Bucket> sortedByName(Map<String, Bucket> buckets) {
+        List<Bucket> sorted = new ArrayList<>(buckets.values());
+        Collections.sort(sorted, (b1, b2) -> b1.name.compareToIgnoreCase(b2.name));
+        return sorted;
+    }
+
+    private static final class Contribution implements Comparable<Contribution> {
+        final String key;
+        final String fileName;
+        final long timestamp;
+        final FileType.Category category;
+        final String folder;
+        final List<String> tags;
+        final long bytes;
+
+        Contribution(Document document) {
+            this.key = document.getKey();
+            this.fileName = document.getFileName();
+            this.timestamp = document.getTimestamp();
+            this.category = document.resolveType().getCategory();
+            this.folder = document.getFolder();
+            this.tags = new ArrayList<>();
+            for (Map.Entry<String, Boolean> tag : document.getTags().entrySet()) {
+                if (Boolean.TRUE.equals(tag.getValue())) {
+                    tags.add(tag.getKey());
+                }
+            }
+            this.bytes = document.resolveSize();
+        }
+
+        // Newest first; the key breaks ties so distinct documents never compare equal
+        @Override
+        public int compareTo(Contribution other) {
+            if (timestamp != other.timestamp) {
+                return Long.compare(other.timestamp, timestamp);
+            }
+            return key.compareTo(other.key);
+        }
+    }
+}
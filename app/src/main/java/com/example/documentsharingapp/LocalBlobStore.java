@@ -0,0 +1,217 @@
+package com.example.documentsharingapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link BlobStore} in a local directory.
+ *
+ * Stands in for a remote store until there is one, so sync, eviction and
+ * rehydration run end to end on a single device, and lets tests exercise
+ * transfers without a network. Chunks are written through
+ * {@link DocumentStore}, so they are encrypted at rest like the documents
+ * they come from; manifests hold only hashes and lengths. Chunks are spread
+ * over subdirectories by the first two characters of their hash. Every
+ * file is written under a temporary name and renamed when complete, so a
+ * crash never leaves a short chunk or manifest behind under its real name.
+ */
+public class LocalBlobStore implements BlobStore {
+
+    /**
+     * Opens the stream a chunk is written to.
+     */
+    interface ChunkOutput {
+        OutputStream create(File file) throws IOException;
+    }
+
+    private static final String CHUNKS = "chunks";
+    private static final String MANIFESTS = "manifests";
+    // Manifests of other versions read as missing, so their content is uploaded again
+    private static final int MANIFEST_VERSION = 2;
+
+    private final File root;
+    private final ChunkOutput chunkOutput;
+
+    public LocalBlobStore(File root) {
+        this(root, DocumentStore::create);
+    }
+
+    /**
+     * Creates a store that writes chunks through the given output, e.g. in
+     * plaintext where the Keystore is not available. Chunks are read back
+     * through {@link DocumentStore} either way.
+     */
+    LocalBlobStore(File root, ChunkOutput chunkOutput) {
+        this.root = root;
+        this.chunkOutput = chunkOutput;
+    }
+
+    private File chunkFile(String chunkHash) {
+        return new File(new File(new File(root, CHUNKS), chunkHash.substring(0, 2)), chunkHash);
+    }
+
+    private File manifestFile(String contentHash) {
+        return new File(new File(root, MANIFESTS), contentHash);
+    }
+
+    @Override
+    public Set<String> findMissing(Collection<String> chunkHashes) {
+        Set<String> missing = new HashSet<>();
+        for (String chunkHash : chunkHashes) {
+            if (!chunkFile(chunkHash).isFile()) {
+                missing.add(chunkHash);
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public void putChunk(String chunkHash, byte[] data, int length) throws IOException {
+        File file = chunkFile(chunkHash);
+        File tempFile = newTempFile(file);
+        try (OutputStream out = chunkOutput.create(tempFile)) {
+            out.write(data, 0, length);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        commit(tempFile, file);
+    }
+
+    @Override
+    public int getChunk(String chunkHash, byte[] buffer) throws IOException {
+        File file = chunkFile(chunkHash);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("No chunk " + chunkHash);
+        }
+        try (InputStream in = DocumentStore.openStream(file)) {
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            if (in.read() != -1) {
+                throw new IOException("Chunk " + chunkHash + " is larger than " + buffer.length + " bytes");
+            }
+            return length;
+        }
+    }
+
+    @Override
+    public void putManifest(String contentHash, BlobManifest manifest) throws IOException {
+        File file = manifestFile(contentHash);
+        File tempFile = newTempFile(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MANIFEST_VERSION);
+            out.writeLong(manifest.getSize());
+            out.writeInt(manifest.getChunkCount());
+            for (int i = 0; i < manifest.getChunkCount(); i++) {
+                out.writeUTF(manifest.getChunkHashes().get(i));
+                out.writeInt(manifest.getChunkLength(i));
+            }
+        }
+        commit(tempFile, file);
+    }
+
+    @Override
+    public BlobManifest getManifest(String contentHash) throws IOException {
+        File file = manifestFile(contentHash);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MANIFEST_VERSION) {
+                return null;
+            }
+            long size = in.readLong();
+            int count = in.readInt();
+            List<String> chunkHashes = new ArrayList<>(count);
+            int[] chunkLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                chunkHashes.add(in.readUTF());
+                chunkLengths[i] = in.readInt();
+            }
+            return new BlobManifest(size, chunkHashes, chunkLengths);
+        }
+    }
+
+    /**
+     * Deletes a manifest, then every chunk of it that no other manifest
+     * uses. Reads all manifests, so it is meant for the occasional deletion.
+     * An upload could reuse a chunk between asking for it and storing its
+     * manifest, so callers must not run this while uploading.
+     */
+    @Override
+    public synchronized void deleteManifest(String contentHash) throws IOException {
+        BlobManifest released = getManifest(contentHash);
+        File file = manifestFile(contentHash);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete manifest " + contentHash);
+        }
+        if (released == null) {
+            return;
+        }
+
+        Set<String> unused = new HashSet<>(released.getChunkHashes());
+        File[] manifests = new File(root, MANIFESTS).listFiles();
+        if (manifests != null) {
+            for (File other : manifests) {
+                if (other.getName().endsWith(".tmp")) {
+                    continue;
+                }
+                // Throws rather than guesses, so a chunk in use is never deleted
+                BlobManifest manifest = getManifest(other.getName());
+                if (manifest != null) {
+                    unused.removeAll(manifest.getChunkHashes());
+                }
+            }
+        }
+        for (String chunkHash : unused) {
+            chunkFile(chunkHash).delete();
+        }
+    }
+
+    /**
+     * Encrypts chunks that earlier versions stored in plaintext. Reads every
+     * such chunk, so call it off the main thread, and not while uploading.
+     */
+    public void encryptExisting() {
+        File[] directories = new File(root, CHUNKS).listFiles();
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            DocumentStore.encryptExisting(directory);
+        }
+    }
+
+    // Unique per call, since parallel uploads may store the same chunk at once
+    private static File newTempFile(File file) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        return File.createTempFile(file.getName(), ".tmp", directory);
+    }
+
+    private static void commit(File tempFile, File file) throws IOException {
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to store " + file.getName());
+        }
+    }
+}
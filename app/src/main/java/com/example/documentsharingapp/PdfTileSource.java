@@ -0,0 +1,119 @@
+package com.example.documentsharingapp;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.content.Context;
+import android.graphics.pdf.PdfRenderer;
+import android.os.ParcelFileDescriptor;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders regions of PDF pages with {@link PdfRenderer}.
+ *
+ * Page sizes (in points) are read for the first few pages when the source
+ * is opened, since each size means opening and parsing its page. The other
+ * pages are assumed to be the size of the first until {@link #measurePages}
+ * reads them. The last page used stays open, since consecutive tiles almost
+ * always come from the same page and opening one means parsing it again.
+ */
+public class PdfTileSource implements TileSource {
+
+    // Pages measured when the source is opened; enough for the first screen
+    private static final int INITIAL_PAGES = 4;
+
+    private final ParcelFileDescriptor descriptor;
+    private final PdfRenderer renderer;
+    private final int[] widths;
+    private final int[] heights;
+    private final Matrix matrix = new Matrix();
+    // Pages before this one have their real sizes in the arrays
+    private volatile int measuredPages;
+
+    private PdfRenderer.Page openPage;
+
+    /**
+     * Opens the file and reads the sizes of its first pages. Does I/O, so
+     * call it off the main thread.
+     */
+    public PdfTileSource(Context context, File file) throws IOException {
+        descriptor = DocumentStore.openDescriptor(context, file);
+        try {
+            renderer = new PdfRenderer(descriptor);
+        } catch (IOException | RuntimeException e) {
+            descriptor.close();
+            throw e;
+        }
+
+        int pageCount = renderer.getPageCount();
+        widths = new int[pageCount];
+        heights = new int[pageCount];
+        measurePages(INITIAL_PAGES);
+    }
+
+    @Override
+    public int getPageCount() {
+        return widths.length;
+    }
+
+    @Override
+    public int getPageWidth(int page) {
+        return page < measuredPages ? widths[page] : widths[0];
+    }
+
+    @Override
+    public int getPageHeight(int page) {
+        return page < measuredPages ? heights[page] : heights[0];
+    }
+
+    @Override
+    public boolean measurePages(int maxPages) {
+        int first = measuredPages;
+        int end = Math.min(widths.length, first + maxPages);
+        for (int i = first; i < end; i++) {
+            PdfRenderer.Page page = open(i);
+            widths[i] = page.getWidth();
+            heights[i] = page.getHeight();
+            // Published page by page, so readers on other threads never see a size half written
+            measuredPages = i + 1;
+        }
+        return end < widths.length;
+    }
+
+    @Override
+    public Bitmap renderRegion(int page, Rect region, float scale) {
+        PdfRenderer.Page pdfPage = open(page);
+        Bitmap bitmap = Bitmap.createBitmap(region.width(), region.height(), Bitmap.Config.ARGB_8888);
+        // Pages are transparent where nothing is drawn
+        bitmap.eraseColor(Color.WHITE);
+
+        matrix.setScale(scale, scale);
+        matrix.postTranslate(-region.left, -region.top);
+        pdfPage.render(bitmap, null, matrix, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+        return bitmap;
+    }
+
+    private PdfRenderer.Page open(int page) {
+        if (openPage != null) {
+            if (openPage.getIndex() == page) {
+                return openPage;
+            }
+            // The renderer allows only one open page at a time
+            openPage.close();
+        }
+        openPage = renderer.openPage(page);
+        return openPage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (openPage != null) {
+            openPage.close();
+            openPage = null;
+        }
+        renderer.close();
+        descriptor.close();
+    }
+}
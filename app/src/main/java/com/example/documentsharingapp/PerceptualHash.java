@@ -0,0 +1,88 @@
+package com.example.documentsharingapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Computes 64-bit difference hashes (dHash) of images. Two images that differ
+ * only in scale, compression or small edits produce hashes with a small
+ * Hamming distance.
+ */
+public final class PerceptualHash {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    // Decode no larger than needed before the final resize to 9x8
+    private static final int MIN_DECODE_SIZE = 64;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Hashes a stored image.
+     * @param file The stored document, encrypted or not.
+     * @return The hash, or null if the file could not be decoded as an image.
+     */
+    public static Long compute(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(file, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight);
+        Bitmap decoded = decode(file, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        Bitmap small = Bitmap.createScaledBitmap(decoded, HASH_WIDTH, HASH_HEIGHT, true);
+        if (small != decoded) {
+            decoded.recycle();
+        }
+
+        int[] pixels = new int[HASH_WIDTH * HASH_HEIGHT];
+        small.getPixels(pixels, 0, HASH_WIDTH, 0, 0, HASH_WIDTH, HASH_HEIGHT);
+        small.recycle();
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = luminance(pixels[y * HASH_WIDTH + x]);
+                int right = luminance(pixels[y * HASH_WIDTH + x + 1]);
+                hash <<= 1;
+                if (left < right) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static Bitmap decode(File file, BitmapFactory.Options options) {
+        try (InputStream in = DocumentStore.openStream(file)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int sampleSizeFor(int width, int height) {
+        int sampleSize = 1;
+        while (Math.min(width, height) / (sampleSize * 2) >= MIN_DECODE_SIZE) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int luminance(int color) {
+        return (Color.red(color) * 299 + Color.green(color) * 587 + Color.blue(color) * 114) / 1000;
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.documentsharingapp;
 
 import android.content.Intent;
-import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,6 +9,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseUser;
@@ -22,12 +22,24 @@ import java.io.File;
 
 public class ProfileFragment extends Fragment {
 
+    // Choices of how much document content to keep on the device
+    private static final long[] BUDGETS = {
+            StorageBudget.UNLIMITED,
+            8L * 1024 * 1024 * 1024,
+            4L * 1024 * 1024 * 1024,
+            2L * 1024 * 1024 * 1024,
+            1024L * 1024 * 1024,
+            512L * 1024 * 1024,
+    };
+
     private CircleImageView profileImage;
     private TextView userName;
     private TextView userEmail;
     private TextView userBio;
     private TextView totalDocuments;
     private TextView totalStorage;
+    private TextView storageLabel;
+    private LinearLayout storageStat;
     private MaterialButton logoutButton;
     private LinearLayout editProfileButton;
     private LinearLayout changePasswordButton;
@@ -37,6 +49,7 @@ public class ProfileFragment extends Fragment {
     private DatabaseReference userRef;
     private DatabaseReference docRef;
     private FirebaseUser currentUser;
+    private ValueEventListener statsListener;
 
     @Nullable
     @Override
@@ -54,10 +67,6 @@ public class ProfileFragment extends Fragment {
         // Initialize UI components
         initializeUiComponents(view);
 
-        // Load user profile and document stats
-        loadProfile();
-        loadDocumentStats();
-
         // Set up click listeners
         setupClickListeners();
 
@@ -67,9 +76,20 @@ public class ProfileFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        // Reload profile data when fragment becomes visible again
+        // Reload profile data when the tab becomes visible again, and listen
+        // for document stats only while it is
         loadProfile();
         loadDocumentStats();
+        showStorageBudget();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (statsListener != null) {
+            docRef.child(currentUser.getUid()).removeEventListener(statsListener);
+            statsListener = null;
+        }
     }
 
     private void initializeUiComponents(View view) {
@@ -79,6 +99,8 @@ public class ProfileFragment extends Fragment {
         userBio = view.findViewById(R.id.userBio);
         totalDocuments = view.findViewById(R.id.totalDocuments);
         totalStorage = view.findViewById(R.id.totalStorage);
+        storageLabel = view.findViewById(R.id.storageLabel);
+        storageStat = view.findViewById(R.id.storageStat);
         logoutButton = view.findViewById(R.id.logoutButton);
         editProfileButton = view.findViewById(R.id.editProfileButton);
         changePasswordButton = view.findViewById(R.id.changePasswordButton);
@@ -117,12 +139,7 @@ public class ProfileFragment extends Fragment {
 
                         // Set profile image
                         String localPath = snapshot.child("profilePicture").getValue(String.class);
-                        if (localPath != null) {
-                            File imageFile = new File(localPath);
-                            if (imageFile.exists()) {
-                                profileImage.setImageURI(Uri.fromFile(imageFile));
-                            }
-                        }
+                        AvatarCache.get(requireContext()).load(localPath, profileImage);
                     }
                 }
 
@@ -135,8 +152,8 @@ public class ProfileFragment extends Fragment {
     }
 
     private void loadDocumentStats() {
-        if (currentUser != null) {
-            docRef.child(currentUser.getUid()).addValueEventListener(new ValueEventListener() {
+        if (currentUser != null && statsListener == null) {
+            statsListener = docRef.child(currentUser.getUid()).addValueEventListener(new ValueEventListener() {
                 @Override
                 public void onDataChange(@NonNull DataSnapshot snapshot) {
                     int count = 0;
@@ -192,6 +209,9 @@ public class ProfileFragment extends Fragment {
             // This could open a dialog or start a new activity
         });
 
+        // Storage stat, which sets how much of the library is kept on the device
+        storageStat.setOnClickListener(v -> showBudgetDialog());
+
         // Edit profile image
         editProfileImage.setOnClickListener(v -> {
             if (homeActivity != null) {
@@ -200,13 +220,52 @@ public class ProfileFragment extends Fragment {
         });
     }
 
+    private void showStorageBudget() {
+        long budget = StorageBudget.get(requireContext()).getBudget();
+        storageLabel.setText(budget == StorageBudget.UNLIMITED
+                ? "MB Used"
+                : "MB of " + budgetLabel(budget));
+    }
+
+    private void showBudgetDialog() {
+        StorageBudget storageBudget = StorageBudget.get(requireContext());
+        String[] labels = new String[BUDGETS.length];
+        int checked = 0;
+        for (int i = 0; i < BUDGETS.length; i++) {
+            labels[i] = budgetLabel(BUDGETS[i]);
+            if (BUDGETS[i] == storageBudget.getBudget()) {
+                checked = i;
+            }
+        }
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Keep on this device")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    // Documents beyond the budget stay listed and download again when opened
+                    storageBudget.setBudget(BUDGETS[which]);
+                    showStorageBudget();
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private static String budgetLabel(long budget) {
+        if (budget == StorageBudget.UNLIMITED) {
+            return "Everything";
+        } else if (budget >= 1024L * 1024 * 1024) {
+            return budget / (1024L * 1024 * 1024) + " GB";
+        }
+        return budget / (1024L * 1024) + " MB";
+    }
+
     /**
      * Updates the profile image immediately without waiting for database refresh
-     * @param imageUri The URI of the new profile image
+     * @param localPath The local path of the new profile image
      */
-    public void updateProfileImage(Uri imageUri) {
-        if (imageUri != null && profileImage != null) {
-            profileImage.setImageURI(imageUri);
+    public void updateProfileImage(String localPath) {
+        if (localPath != null && profileImage != null) {
+            AvatarCache.get(requireContext()).load(localPath, profileImage);
         }
     }
 }
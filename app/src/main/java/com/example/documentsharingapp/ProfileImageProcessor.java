@@ -0,0 +1,160 @@
+package com.example.documentsharingapp;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a picked photo into the profile picture renditions the app displays.
+ *
+ * The source is decoded with subsampling, rotated or mirrored according to
+ * its EXIF orientation, center-cropped to a square and written once per
+ * rendition as a compressed JPEG. Screens then load the smallest rendition
+ * that covers their view instead of the camera original.
+ */
+public final class ProfileImageProcessor {
+
+    // 100dp profile headers at xxxhdpi
+    public static final int HEADER_SIZE = 400;
+    // 48dp list and toolbar avatars at xxxhdpi
+    public static final int LIST_SIZE = 192;
+
+    private static final String LIST_SUFFIX = "_small";
+    private static final int JPEG_QUALITY = 85;
+
+    private ProfileImageProcessor() {
+    }
+
+    /**
+     * Processes the image and writes its renditions into the directory. Does
+     * I/O and decoding, so call it off the main thread.
+     * @return The path of the header rendition, which is what the profile stores.
+     */
+    public static String process(ContentResolver resolver, Uri imageUri, File directory, String uid) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        int shortEdge = Math.min(options.outWidth, options.outHeight);
+        if (shortEdge <= 0) {
+            throw new IOException("Not an image");
+        }
+
+        int orientation;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            orientation = new ExifInterface(in).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }
+
+        // Subsample as far as possible while still covering the largest rendition
+        int sampleSize = 1;
+        while (shortEdge / (sampleSize * 2) >= HEADER_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        Bitmap square = orientedSquare(decoded, orientation);
+        if (square != decoded) {
+            decoded.recycle();
+        }
+
+        File header = new File(directory, uid + ".jpg");
+        writeRendition(square, HEADER_SIZE, header);
+        writeRendition(square, LIST_SIZE, listRenditionOf(header));
+        square.recycle();
+        return header.getAbsolutePath();
+    }
+
+    /**
+     * Returns the path of the smallest rendition that covers the given pixel
+     * size. Pictures saved before renditions existed only have the one file.
+     */
+    public static String pathForSize(String path, int size) {
+        if (size <= LIST_SIZE) {
+            File small = listRenditionOf(new File(path));
+            if (small.exists()) {
+                return small.getPath();
+            }
+        }
+        return path;
+    }
+
+    private static File listRenditionOf(File header) {
+        String name = header.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot >= 0 ? name.substring(0, dot) : name;
+        return new File(header.getParentFile(), base + LIST_SUFFIX + ".jpg");
+    }
+
+    // Applies the EXIF transform and the center crop in a single pass
+    private static Bitmap orientedSquare(Bitmap source, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+
+        int edge = Math.min(source.getWidth(), source.getHeight());
+        int x = (source.getWidth() - edge) / 2;
+        int y = (source.getHeight() - edge) / 2;
+        return Bitmap.createBitmap(source, x, y, edge, edge, matrix, true);
+    }
+
+    private static void writeRendition(Bitmap square, int size, File target) throws IOException {
+        Bitmap scaled = square.getWidth() > size
+                ? Bitmap.createScaledBitmap(square, size, size, true)
+                : square;
+
+        File tempFile = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            scaled.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            if (scaled != square) {
+                scaled.recycle();
+            }
+        }
+        if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Failed to write " + target.getName());
+        }
+    }
+}
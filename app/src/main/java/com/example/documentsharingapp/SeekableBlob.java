@@ -0,0 +1,27 @@
+package com.example.documentsharingapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The stored form of a document, readable at any offset.
+ *
+ * Implementations turn whatever is on disk (an {@link EncryptedBlob}, or a
+ * {@link FileBlob} for files written before encryption) back into the
+ * document's bytes for the range asked for, decrypting only the chunks that
+ * range covers, so a reader can seek anywhere without the document being
+ * restored to a temporary file first.
+ */
+public interface SeekableBlob extends Closeable {
+
+    /**
+     * Size of the document's content, not of its stored form.
+     */
+    long getSize() throws IOException;
+
+    /**
+     * Reads up to length bytes of content starting at position.
+     * @return The number of bytes read, or -1 at the end of the content.
+     */
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,107 @@
+package com.example.documentsharingapp;
+
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Database layout of sharing.
+ *
+ * Sharing fans out on write: a share puts a copy of the document's metadata
+ * into the recipient's inbox at sharedWith/{recipientUid}/{docId}, marks the
+ * recipient on the owner's document, and bumps per-user counters under
+ * shareCounts/{uid}. All of it goes into one multi-path update, so the
+ * inbox, the marks and the counters change together. Reading what was
+ * shared with a user is then a query on their inbox alone, and showing how
+ * much was shared is a read of a single counter.
+ *
+ * database.rules.json indexes profiles by email and inboxes by timestamp,
+ * and refuses a second share of a document with the same recipient, so a
+ * stale client cannot count a share twice.
+ *
+ * Inbox entries name content by its hash only. The owner's local path means
+ * nothing on the recipient's device, so it is never copied into them.
+ */
+public final class ShareIndex {
+
+    private static final String SHARED_WITH = "sharedWith";
+    private static final String SHARE_COUNTS = "shareCounts";
+    private static final String RECEIVED = "received";
+    private static final String SENT = "sent";
+
+    private ShareIndex() {
+    }
+
+    /**
+     * Documents shared with a user, keyed by document id. Entries carry a
+     * timestamp of when they were shared, which the inbox is ordered by.
+     */
+    public static DatabaseReference inbox(String uid) {
+        return FirebaseDatabase.getInstance().getReference(SHARED_WITH).child(uid);
+    }
+
+    /**
+     * Number of documents shared with a user.
+     */
+    public static DatabaseReference receivedCount(String uid) {
+        return FirebaseDatabase.getInstance().getReference(SHARE_COUNTS).child(uid).child(RECEIVED);
+    }
+
+    /**
+     * Adds the writes of sharing a document to a multi-path update relative
+     * to the database root.
+     */
+    public static void addShare(Map<String, Object> updates, String ownerUid, String ownerEmail,
+                                Document document, String recipientUid) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("fileName", document.getFileName());
+        entry.put("size", document.resolveSize());
+        entry.put("contentHash", document.getContentHash());
+        entry.put("fileType", document.resolveType().getCode());
+        entry.put("ownerUid", ownerUid);
+        entry.put("ownerEmail", ownerEmail);
+        entry.put("timestamp", ServerValue.TIMESTAMP);
+
+        updates.put(SHARED_WITH + "/" + recipientUid + "/" + document.getKey(), entry);
+        updates.put("documents/" + ownerUid + "/" + document.getKey() + "/sharedWith/" + recipientUid, true);
+        updates.put(SHARE_COUNTS + "/" + recipientUid + "/" + RECEIVED, ServerValue.increment(1));
+        updates.put(SHARE_COUNTS + "/" + ownerUid + "/" + SENT, ServerValue.increment(1));
+    }
+
+    /**
+     * Adds the writes of a document's content changing: its own metadata
+     * and the copies in the inboxes it was shared to.
+     */
+    public static void addContentChange(Map<String, Object> updates, String ownerUid, String documentKey,
+                                        Iterable<String> recipientUids, String contentHash, long size,
+                                        FileType fileType) {
+        String path = "documents/" + ownerUid + "/" + documentKey + "/";
+        updates.put(path + "contentHash", contentHash);
+        updates.put(path + "size", size);
+        updates.put(path + "fileType", fileType.getCode());
+        for (String recipientUid : recipientUids) {
+            String entryPath = SHARED_WITH + "/" + recipientUid + "/" + documentKey + "/";
+            updates.put(entryPath + "contentHash", contentHash);
+            updates.put(entryPath + "size", size);
+            updates.put(entryPath + "fileType", fileType.getCode());
+        }
+    }
+
+    /**
+     * Adds the writes that withdraw every share of a document, e.g. before
+     * it is deleted.
+     */
+    public static void addUnshareAll(Map<String, Object> updates, String ownerUid, Document document) {
+        int recipients = 0;
+        for (String recipientUid : document.getSharedWith().keySet()) {
+            updates.put(SHARED_WITH + "/" + recipientUid + "/" + document.getKey(), null);
+            updates.put(SHARE_COUNTS + "/" + recipientUid + "/" + RECEIVED, ServerValue.increment(-1));
+            recipients++;
+        }
+        if (recipients > 0) {
+            updates.put(SHARE_COUNTS + "/" + ownerUid + "/" + SENT, ServerValue.increment(-recipients));
+        }
+    }
+}
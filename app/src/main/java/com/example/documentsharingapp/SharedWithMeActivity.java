@@ -0,0 +1,156 @@
+package com.example.documentsharingapp;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SharedWithMeActivity lists the documents other users shared with the
+ * current user, newest first, reading their inbox one page at a time.
+ *
+ * It is a list only. Entries carry metadata and a content hash, and the
+ * content itself cannot reach this device until documents are synced, so
+ * rows do not open.
+ */
+public class SharedWithMeActivity extends AppCompatActivity {
+
+    private static final int PAGE_SIZE = 25;
+    // Load the next page once the list is scrolled this close to its end
+    private static final int LOAD_AHEAD = 5;
+
+    private final List<Document> documents = new ArrayList<>();
+    // Pages are shown once their row labels are prepared
+    private final DisplayModelBatcher pageBatcher = new DisplayModelBatcher(this::onPageReady);
+
+    private RecyclerView sharedRecycler;
+    private LinearLayout emptyState;
+    private DocumentAdapter adapter;
+    private DatabaseReference inboxRef;
+
+    private boolean loading;
+    private boolean exhausted;
+    // Position of the oldest entry shown, where the next page ends
+    private long oldestTimestamp;
+    private String oldestKey;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_shared_with_me);
+
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            finish();
+            return;
+        }
+        inboxRef = ShareIndex.inbox(currentUser.getUid());
+
+        ImageView backButton = findViewById(R.id.backButton);
+        backButton.setOnClickListener(v -> finish());
+        emptyState = findViewById(R.id.emptyState);
+        sharedRecycler = findViewById(R.id.sharedRecycler);
+
+        // No option listener, and no opening: the content of shared documents is not on this device
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        sharedRecycler.setLayoutManager(layoutManager);
+        adapter = new DocumentAdapter(documents);
+        adapter.setOpenable(false);
+        sharedRecycler.setAdapter(adapter);
+        new ViewportPrefetcher(layoutManager, adapter, ThumbnailLoader.get(this)).attach(sharedRecycler);
+        sharedRecycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= documents.size() - LOAD_AHEAD) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+
+        // The newest PAGE_SIZE entries older than everything shown so far
+        Query page = inboxRef.orderByChild("timestamp");
+        if (oldestKey != null) {
+            page = page.endBefore(oldestTimestamp, oldestKey);
+        }
+        page.limitToLast(PAGE_SIZE).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                List<Document> pageDocuments = new ArrayList<>();
+                for (DataSnapshot child : snapshot.getChildren()) {
+                    Document doc = child.getValue(Document.class);
+                    if (doc != null) {
+                        doc.setKey(child.getKey());
+                        // Older entries carry the owner's path, which means nothing here
+                        doc.setLocalPath(null);
+                        pageDocuments.add(doc);
+                    }
+                }
+                exhausted = pageDocuments.size() < PAGE_SIZE;
+                if (pageDocuments.isEmpty()) {
+                    loading = false;
+                    updateEmptyState();
+                    return;
+                }
+
+                // Queries return the oldest first
+                Collections.reverse(pageDocuments);
+                Document oldest = pageDocuments.get(pageDocuments.size() - 1);
+                oldestTimestamp = oldest.getTimestamp();
+                oldestKey = oldest.getKey();
+                for (Document doc : pageDocuments) {
+                    pageBatcher.put(doc);
+                }
+                pageBatcher.flush();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                loading = false;
+                Toast.makeText(SharedWithMeActivity.this, "Failed to load shared documents", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void onPageReady(List<Document> pageDocuments) {
+        int start = documents.size();
+        documents.addAll(pageDocuments);
+        adapter.notifyItemRangeInserted(start, pageDocuments.size());
+        loading = false;
+        updateEmptyState();
+    }
+
+    private void updateEmptyState() {
+        emptyState.setVisibility(documents.isEmpty() ? View.VISIBLE : View.GONE);
+        sharedRecycler.setVisibility(documents.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        pageBatcher.clear();
+    }
+}
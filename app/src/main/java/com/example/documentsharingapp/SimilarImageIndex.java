@@ -0,0 +1,254 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds near-duplicate image documents.
+ *
+ * Image documents are hashed with {@link PerceptualHash} on a background
+ * thread and inserted into a {@link BkTree}, which answers Hamming-radius
+ * queries without comparing against every image. Hashes are cached on disk
+ * together with the file's modification time, so each image is decoded only
+ * once unless it changes. The cache is appended to as images are hashed and
+ * rewritten with only the live entries once it holds more than twice as
+ * many records as that.
+ */
+public class SimilarImageIndex {
+
+    // Out of 64 bits; small enough to skip unrelated photos with similar layouts
+    public static final int DEFAULT_RADIUS = 10;
+
+    private static final String TAG = "SimilarImageIndex";
+    private static final String CACHE_FILE_NAME = "image_hashes.bin";
+    // Small caches are not worth rewriting
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    private static SimilarImageIndex instance;
+
+    private final File cacheFile;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, TAG));
+
+    // Guarded by this
+    private final BkTree tree = new BkTree();
+    private final Map<String, Long> hashes = new HashMap<>();
+    private final Map<String, Document> documents = new HashMap<>();
+    // The latest document submitted under each key; work for any other is stale
+    private final Map<String, Document> submitted = new HashMap<>();
+
+    // Accessed on the worker thread only
+    private Map<String, CachedHash> cachedHashes;
+    // Records in the cache file, live or replaced
+    private int cacheRecords;
+
+    public static synchronized SimilarImageIndex get(Context context) {
+        if (instance == null) {
+            instance = new SimilarImageIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SimilarImageIndex(Context context) {
+        cacheFile = new File(context.getFilesDir(), CACHE_FILE_NAME);
+    }
+
+    public static boolean isImage(Document document) {
+        return document.resolveType().getCategory() == FileType.Category.IMAGE;
+    }
+
+    /**
+     * Queues a document for hashing. Non-image documents are ignored.
+     */
+    public void submit(Document document) {
+        if (document.getKey() == null || !isImage(document)) {
+            return;
+        }
+        synchronized (this) {
+            submitted.put(document.getKey(), document);
+        }
+        worker.execute(() -> index(document));
+    }
+
+    /**
+     * Drops a deleted document. Hashing still queued for it is skipped.
+     */
+    public void remove(String documentKey) {
+        synchronized (this) {
+            submitted.remove(documentKey);
+            removeFromTree(documentKey);
+        }
+        worker.execute(() -> forget(documentKey));
+    }
+
+    // Guarded by this
+    private void removeFromTree(String documentKey) {
+        Long hash = hashes.remove(documentKey);
+        documents.remove(documentKey);
+        if (hash != null) {
+            tree.remove(hash, documentKey);
+        }
+    }
+
+    /**
+     * Returns indexed images within the given Hamming radius of a document,
+     * excluding the document itself. Documents that are not hashed yet have
+     * no matches.
+     */
+    public synchronized List<Document> findSimilar(Document document, int radius) {
+        List<Document> similar = new ArrayList<>();
+        Long hash = hashes.get(document.getKey());
+        if (hash == null) {
+            return similar;
+        }
+
+        for (String key : tree.search(hash, radius)) {
+            if (!key.equals(document.getKey())) {
+                similar.add(documents.get(key));
+            }
+        }
+        return similar;
+    }
+
+    private void index(Document document) {
+        synchronized (this) {
+            // Removed or submitted again since this was queued
+            if (submitted.get(document.getKey()) != document) {
+                return;
+            }
+        }
+        if (cachedHashes == null) {
+            cachedHashes = loadCache();
+        }
+
+        File file = new File(document.getLocalPath());
+        if (!file.exists()) {
+            return;
+        }
+
+        long lastModified = file.lastModified();
+        CachedHash cached = cachedHashes.get(document.getKey());
+        Long hash;
+        if (cached != null && cached.lastModified == lastModified) {
+            hash = cached.hash;
+        } else {
+            hash = PerceptualHash.compute(file);
+            if (hash == null) {
+                return;
+            }
+            cached = new CachedHash(document.getKey(), lastModified, hash);
+            cachedHashes.put(cached.key, cached);
+            appendToCache(cached);
+        }
+
+        synchronized (this) {
+            // A remove may have come in while the image was being hashed
+            if (submitted.get(document.getKey()) != document) {
+                return;
+            }
+            removeFromTree(document.getKey());
+            hashes.put(document.getKey(), hash);
+            documents.put(document.getKey(), document);
+            tree.add(hash, document.getKey());
+        }
+    }
+
+    // Runs on the worker, after any hashing queued before the remove
+    private void forget(String documentKey) {
+        if (cachedHashes == null) {
+            cachedHashes = loadCache();
+        }
+        if (cachedHashes.remove(documentKey) != null) {
+            compactCacheIfNeeded();
+        }
+    }
+
+    private Map<String, CachedHash> loadCache() {
+        Map<String, CachedHash> loaded = new HashMap<>();
+        if (!cacheFile.exists()) {
+            return loaded;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            while (true) {
+                CachedHash cached = new CachedHash(in.readUTF(), in.readLong(), in.readLong());
+                // Later records win, so re-hashed files replace older entries
+                loaded.put(cached.key, cached);
+                cacheRecords++;
+            }
+        } catch (EOFException e) {
+            // End of cache
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read hash cache", e);
+        }
+        return loaded;
+    }
+
+    private void appendToCache(CachedHash cached) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(cacheFile, true)))) {
+            writeRecord(out, cached);
+            cacheRecords++;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write hash cache", e);
+        }
+        compactCacheIfNeeded();
+    }
+
+    private void compactCacheIfNeeded() {
+        if (cacheRecords <= MIN_COMPACT_RECORDS || cacheRecords <= 2 * cachedHashes.size()) {
+            return;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            for (CachedHash cached : cachedHashes.values()) {
+                writeRecord(out, cached);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compact hash cache", e);
+            return;
+        }
+        if (tempFile.renameTo(cacheFile)) {
+            cacheRecords = cachedHashes.size();
+        } else {
+            Log.w(TAG, "Failed to replace hash cache");
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, CachedHash cached) throws IOException {
+        out.writeUTF(cached.key);
+        out.writeLong(cached.lastModified);
+        out.writeLong(cached.hash);
+    }
+
+    private static final class CachedHash {
+        final String key;
+        final long lastModified;
+        final long hash;
+
+        CachedHash(String key, long lastModified, long hash) {
+            this.key = key;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the documents stored on the device within a size budget the user
+ * chooses, so a library larger than the phone still fits on it.
+ *
+ * When the local copies of documents outgrow the budget, the coldest ones
+ * are evicted: those with the lowest {@link AccessLog} score, which is low
+ * for documents opened rarely and for those not opened in a long time.
+ * Only the content goes. Metadata stays in the database and thumbnails in
+ * their cache, so evicted documents still show in every list, and opening
+ * one downloads it again through {@link BlobSync}. A document is evicted
+ * only once its content is confirmed to be in the blob store.
+ */
+public class StorageBudget {
+
+    /**
+     * Budget of a library that is never evicted.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final String TAG = "StorageBudget";
+    private static final String PREFS = "storage_prefs";
+    private static final String KEY_BUDGET = "budget_bytes";
+    // Files written more recently than this were just imported or downloaded to be opened
+    private static final long RECENT_MILLIS = 10 * 60 * 1000L;
+
+    private static StorageBudget instance;
+
+    private final SharedPreferences preferences;
+    private final AccessLog accessLog;
+    private final BlobSync blobSync;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Documents of the last enforce(), which a budget change is checked against
+    private Collection<Document> documents = Collections.emptyList();
+    // Input of the pass queued but not started yet; later requests replace it
+    private final AtomicReference<List<Candidate>> pendingCandidates = new AtomicReference<>();
+
+    public static synchronized StorageBudget get(Context context) {
+        if (instance == null) {
+            instance = new StorageBudget(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StorageBudget(Context context) {
+        preferences = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        accessLog = AccessLog.get(context);
+        blobSync = BlobSync.get(context);
+    }
+
+    /**
+     * Returns the budget in bytes, or {@link #UNLIMITED}.
+     */
+    public long getBudget() {
+        return preferences.getLong(KEY_BUDGET, UNLIMITED);
+    }
+
+    /**
+     * Changes the budget and evicts down to it. Call it on the main thread.
+     */
+    public void setBudget(long bytes) {
+        preferences.edit().putLong(KEY_BUDGET, bytes).apply();
+        schedulePass();
+    }
+
+    /**
+     * Evicts the coldest of the given documents until the rest fit the
+     * budget. Cheap to call whenever the library changes: passes run one at
+     * a time in the background, and calls made while one is queued join it.
+     * Call it on the main thread.
+     */
+    public void enforce(Collection<Document> documents) {
+        this.documents = documents;
+        schedulePass();
+    }
+
+    private void schedulePass() {
+        if (getBudget() == UNLIMITED) {
+            return;
+        }
+        // Scores are read here, on the main thread the access log belongs to
+        List<Candidate> candidates = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            List<File> files = new ArrayList<>(2);
+            if (document.getLocalPath() != null) {
+                files.add(new File(document.getLocalPath()));
+            }
+            if (document.getContentHash() != null) {
+                files.add(blobSync.getDownloadLocation(document.getContentHash()));
+            }
+            candidates.add(new Candidate(document.getContentHash(), accessLog.getScore(document.getKey()),
+                    document.getTimestamp(), files));
+        }
+        if (pendingCandidates.getAndSet(candidates) == null) {
+            executor.execute(this::evictOffMainThread);
+        }
+    }
+
+    private void evictOffMainThread() {
+        long budget = getBudget();
+        long total = evict(pendingCandidates.getAndSet(null), budget, System.currentTimeMillis(),
+                blobSync::isStored);
+        if (total > budget) {
+            Log.i(TAG, "Library is " + total + " bytes after eviction, over the budget of " + budget);
+        }
+    }
+
+    /**
+     * Deletes the local files of the coldest candidates whose content is
+     * stored until the rest fit the budget. Files written in the last few
+     * minutes stay, as they were just imported or downloaded to be opened.
+     * @param isStored Whether content is in the blob store, by content hash.
+     * @return The bytes left on the device.
+     */
+    static long evict(List<Candidate> candidates, long budget, long now, Predicate<String> isStored) {
+        // Only documents and their downloads count; the blob store stands in for remote storage
+        long total = 0;
+        Set<File> counted = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            for (File file : candidate.files) {
+                if (counted.add(file) && file.isFile()) {
+                    total += file.length();
+                }
+            }
+        }
+        if (total <= budget) {
+            return total;
+        }
+
+        // Coldest first; among documents never opened, the oldest
+        Collections.sort(candidates, (a, b) -> a.score != b.score
+                ? Double.compare(a.score, b.score)
+                : Long.compare(a.timestamp, b.timestamp));
+
+        for (Candidate candidate : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            long size = 0;
+            boolean recent = false;
+            for (File file : candidate.files) {
+                if (file.isFile()) {
+                    size += file.length();
+                    recent |= now - file.lastModified() < RECENT_MILLIS;
+                }
+            }
+            if (size == 0 || recent || !isStored.test(candidate.contentHash)) {
+                continue;
+            }
+            for (File file : candidate.files) {
+                if (file.isFile() && !file.delete()) {
+                    Log.w(TAG, "Failed to evict " + file);
+                }
+            }
+            total -= size;
+        }
+        return total;
+    }
+
+    /**
+     * The local files of a document and what ranks it for eviction.
+     */
+    static final class Candidate {
+        final String contentHash;
+        final double score;
+        final long timestamp;
+        // A document opened from its download may have it as its local path too
+        final Set<File> files;
+
+        Candidate(String contentHash, double score, long timestamp, Collection<File> files) {
+            this.contentHash = contentHash;
+            this.score = score;
+            this.timestamp = timestamp;
+            this.files = new LinkedHashSet<>(files);
+        }
+    }
+}
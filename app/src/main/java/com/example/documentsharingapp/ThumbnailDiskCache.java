@@ -0,0 +1,139 @@
+package com.example.documentsharingapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded on-disk store of rendered thumbnails.
+ *
+ * Entries are files named after their key, written through
+ * {@link DocumentStore} so they are encrypted like the documents they show. An access-ordered index of the
+ * entries and their sizes is built once from the directory; when a write
+ * pushes the total over the limit, the least recently used files are deleted.
+ * All methods do file I/O and must be called off the main thread.
+ */
+public class ThumbnailDiskCache {
+
+    private static final String TAG = "ThumbnailDiskCache";
+    private static final int JPEG_QUALITY = 85;
+
+    private final File directory;
+    private final long maxBytes;
+
+    // Guarded by this; iteration order is least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        loadIndex();
+    }
+
+    public Bitmap get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        File file = fileFor(key);
+        Bitmap bitmap;
+        try (InputStream in = DocumentStore.openStream(file)) {
+            bitmap = BitmapFactory.decodeStream(in);
+        } catch (IOException e) {
+            bitmap = null;
+        }
+        if (bitmap == null) {
+            remove(key);
+            return null;
+        }
+        // Keeps the recency order across restarts
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        File file = fileFor(key);
+        File tempFile;
+        try {
+            // Unique per write, so two threads caching the same key do not write into one file
+            tempFile = File.createTempFile(key, ".tmp", directory);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write thumbnail", e);
+            return;
+        }
+        try (OutputStream out = DocumentStore.create(tempFile)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write thumbnail", e);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(key, file.length());
+            totalBytes += file.length() - (previous != null ? previous : 0);
+            trimToSize();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        fileFor(key).delete();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Oldest first so the access order matches last use
+        Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
+                    file.delete();
+                    continue;
+                }
+                entries.put(name, file.length());
+                totalBytes += file.length();
+            }
+            trimToSize();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key);
+    }
+}
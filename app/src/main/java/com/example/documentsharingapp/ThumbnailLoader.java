@@ -0,0 +1,318 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads document previews into list rows.
+ *
+ * Thumbnails are looked up in an in-memory LRU cache first, then in a
+ * {@link ThumbnailDiskCache}, and only rendered from the document when both
+ * miss: the first page for PDFs, a downsampled decode for images. Everything
+ * except the memory lookup happens on background threads, and results are
+ * dropped if the row was rebound to another document in the meantime.
+ * Work runs on a {@link DecodeScheduler}, so rows on screen are served
+ * before prefetches and recycled rows never cost a decode.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+
+    // Longest edge of a stored thumbnail; large enough for the recent cards at xxxhdpi
+    static final int THUMBNAIL_SIZE = 256;
+
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static ThumbnailLoader instance;
+
+    private final Context context;
+    private final File cacheDirectory;
+    // Where thumbnails were cached unencrypted
+    private final File legacyCacheDirectory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final DecodeScheduler scheduler = new DecodeScheduler(TAG);
+    // Keys with a prefetch queued, owned by the key itself
+    private final Set<String> prefetchKeys = new HashSet<>();
+    private final LruCache<String, Bitmap> memoryCache;
+    private ThumbnailDiskCache diskCache;
+
+    public static synchronized ThumbnailLoader get(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        this.context = context;
+        cacheDirectory = new File(context.getCacheDir(), "encrypted_thumbnails");
+        legacyCacheDirectory = new File(context.getCacheDir(), "thumbnails");
+
+        // An eighth of the heap, measured in bytes
+        int memoryCacheBytes = (int) (Runtime.getRuntime().maxMemory() / 8);
+        memoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static boolean hasPreview(Document document) {
+        FileType type = document.resolveType();
+        return type == FileType.PDF || type.getCategory() == FileType.Category.IMAGE;
+    }
+
+    /**
+     * Shows the thumbnail of a document in the given view once it is
+     * available. The view keeps its current (icon) image until then.
+     */
+    public void load(Document document, ImageView imageView) {
+        // Whatever was queued for the previous document of this row is stale now
+        scheduler.cancel(imageView);
+        imageView.setTag(R.id.thumbnailKey, null);
+        if (!hasThumbnail(document)) {
+            return;
+        }
+
+        String key = knownKey(document);
+        if (key != null) {
+            Bitmap cached = memoryCache.get(key);
+            if (cached != null) {
+                showThumbnail(imageView, cached);
+                return;
+            }
+        }
+
+        // Without a known key the row is matched by path until the key is resolved
+        String request = key != null ? key : document.getLocalPath();
+        imageView.setTag(R.id.thumbnailKey, request);
+        scheduler.submit(imageView, DecodeScheduler.PRIORITY_VISIBLE, () -> {
+            String resolvedKey = key != null ? key : cacheKey(document);
+            Bitmap bitmap = loadOffMainThread(resolvedKey, document);
+            if (bitmap == null) {
+                return;
+            }
+            memoryCache.put(resolvedKey, bitmap);
+            mainHandler.post(() -> {
+                // The row may have been rebound while this was loading
+                if (request.equals(imageView.getTag(R.id.thumbnailKey))) {
+                    showThumbnail(imageView, bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops pending work for a view, e.g. when its row is recycled.
+     */
+    public void cancel(ImageView imageView) {
+        scheduler.cancel(imageView);
+        imageView.setTag(R.id.thumbnailKey, null);
+    }
+
+    /**
+     * Warms the memory cache for documents about to scroll into view, nearest
+     * first. Prefetches from an earlier call that are still queued and not in
+     * the new list are dropped, so a fling does not leave a backlog behind.
+     */
+    public void prefetch(List<Document> documents) {
+        Set<String> wanted = new HashSet<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            if (!hasThumbnail(document)) {
+                continue;
+            }
+            String key = knownKey(document);
+            if (key != null && memoryCache.get(key) != null) {
+                continue;
+            }
+            String request = key != null ? key : document.getLocalPath();
+            wanted.add(request);
+            scheduler.submit(request, DecodeScheduler.PRIORITY_PREFETCH + i, () -> {
+                String resolvedKey = key != null ? key : cacheKey(document);
+                Bitmap bitmap = loadOffMainThread(resolvedKey, document);
+                if (bitmap != null) {
+                    memoryCache.put(resolvedKey, bitmap);
+                }
+            });
+        }
+
+        synchronized (prefetchKeys) {
+            for (String key : prefetchKeys) {
+                if (!wanted.contains(key)) {
+                    scheduler.cancel(key);
+                }
+            }
+            prefetchKeys.clear();
+            prefetchKeys.addAll(wanted);
+        }
+    }
+
+    private static void showThumbnail(ImageView imageView, Bitmap bitmap) {
+        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        imageView.setImageBitmap(bitmap);
+    }
+
+    private static boolean hasThumbnail(Document document) {
+        DocumentDisplayModel model = document.getDisplayModel();
+        if (model != null) {
+            return model.getThumbnailKey() != null;
+        }
+        return hasPreview(document) && document.getLocalPath() != null;
+    }
+
+    /**
+     * Returns the cache key of a document's thumbnail when it is known
+     * without touching the file: the key prepared with the display model, or
+     * the content hash. Null when the key depends on the file's size and age,
+     * which are then read on the decode thread, never while binding.
+     */
+    private static String knownKey(Document document) {
+        DocumentDisplayModel model = document.getDisplayModel();
+        if (model != null) {
+            return model.getThumbnailKey();
+        }
+        return document.getContentHash();
+    }
+
+    /**
+     * Keys thumbnails by content when the hash is known, otherwise by the file
+     * path and its size and modification time. That reads the file's
+     * attributes, so it is called off the main thread.
+     */
+    static String cacheKey(Document document) {
+        if (document.getContentHash() != null) {
+            return document.getContentHash();
+        }
+        File file = new File(document.getLocalPath());
+        String identity = file.getPath() + ":" + file.length() + ":" + file.lastModified();
+        byte[] bytes = identity.getBytes();
+        return ContentHash.of(bytes, 0, bytes.length);
+    }
+
+    private void deleteLegacyCache() {
+        File[] files = legacyCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        legacyCacheDirectory.delete();
+    }
+
+    private Bitmap loadOffMainThread(String key, Document document) {
+        // A prefetch or another row may have produced it since this was queued
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        synchronized (this) {
+            if (diskCache == null) {
+                deleteLegacyCache();
+                diskCache = new ThumbnailDiskCache(cacheDirectory, DISK_CACHE_BYTES);
+            }
+        }
+
+        Bitmap bitmap = diskCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        File file = new File(document.getLocalPath());
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            if (document.resolveType() == FileType.PDF) {
+                bitmap = renderPdfPage(context, file);
+            } else {
+                bitmap = decodeImage(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Damaged or unsupported files keep their type icon
+            Log.w(TAG, "Failed to render thumbnail for " + document.getFileName(), e);
+            return null;
+        }
+
+        if (bitmap != null) {
+            diskCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap renderPdfPage(Context context, File file) throws IOException {
+        // Only the chunks holding the first page are decrypted
+        try (ParcelFileDescriptor descriptor = DocumentStore.openDescriptor(context, file);
+             PdfRenderer renderer = new PdfRenderer(descriptor)) {
+            if (renderer.getPageCount() == 0) {
+                return null;
+            }
+            try (PdfRenderer.Page page = renderer.openPage(0)) {
+                float scale = (float) THUMBNAIL_SIZE / Math.max(page.getWidth(), page.getHeight());
+                int width = Math.max(1, Math.round(page.getWidth() * scale));
+                int height = Math.max(1, Math.round(page.getHeight() * scale));
+
+                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                // Pages are transparent where nothing is drawn
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return bitmap;
+            }
+        }
+    }
+
+    private static Bitmap decodeImage(File file) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = DocumentStore.openStream(file)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Largest power of two that keeps the short edge at or above the thumbnail size
+        int sampleSize = 1;
+        while (Math.min(options.outWidth, options.outHeight) / (sampleSize * 2) >= THUMBNAIL_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded;
+        try (InputStream in = DocumentStore.openStream(file)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        float scale = (float) THUMBNAIL_SIZE / Math.min(decoded.getWidth(), decoded.getHeight());
+        if (scale >= 1f) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded,
+                Math.round(decoded.getWidth() * scale), Math.round(decoded.getHeight() * scale), true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.documentsharingapp;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A paged document that {@link TiledDocumentView} can render piece by piece.
+ *
+ * Page sizes may be read from any thread. A source may start out with only
+ * some of them measured and estimate the rest until {@link #measurePages}
+ * reads them. Measuring, rendering and closing happen on the view's single
+ * render thread, so sources do not need to be thread-safe otherwise.
+ */
+public interface TileSource extends Closeable {
+
+    int getPageCount();
+
+    /**
+     * Width of a page in the source's own units, e.g. points or pixels.
+     */
+    int getPageWidth(int page);
+
+    int getPageHeight(int page);
+
+    /**
+     * Reads the real sizes of up to the given number of pages whose sizes
+     * are still estimates.
+     * @return Whether estimated pages remain.
+     */
+    boolean measurePages(int maxPages) throws IOException;
+
+    /**
+     * Renders part of a page. The page is scaled by the given factor and the
+     * region is in those scaled coordinates. The result may be smaller than
+     * the region when the source can only produce less detail; it is drawn
+     * stretched over the region.
+     */
+    Bitmap renderRegion(int page, Rect region, float scale) throws IOException;
+}
@@ -0,0 +1,592 @@
+package com.example.documentsharingapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows the pages of a {@link TileSource} in a vertical, zoomable strip.
+ *
+ * At zoom 1 every page fills the width of the view. Each page is drawn from
+ * a low-resolution preview, with tiles rendered for the current zoom on top
+ * wherever they are ready. Tiles come in zoom levels that double in
+ * resolution, so a pinch reuses the tiles of its level until it crosses to
+ * the next one. Only tiles of the viewport and of one screen above and below
+ * it are rendered, previews for the pages around the viewport are rendered
+ * ahead, and both live in caches of fixed byte size, so memory stays flat
+ * however long the document is.
+ *
+ * Pages whose sizes the source only estimates are laid out with the
+ * estimate, and the real sizes are read in the background whenever the
+ * render thread has nothing else to do. Pages that turn out to differ are
+ * laid out again, keeping the page in the middle of the screen in place.
+ */
+public class TiledDocumentView extends View {
+
+    private static final String TAG = "TiledDocumentView";
+
+    public interface OnPageChangeListener {
+        void onPageChanged(int page, int pageCount);
+    }
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_LEVEL = 3;
+    private static final float MAX_ZOOM = 1 << MAX_LEVEL;
+    private static final float DOUBLE_TAP_ZOOM = 2.5f;
+    // Level slot used for page previews in tile keys
+    private static final int PREVIEW_LEVEL = 15;
+    // Previews are rendered at this fraction of the view width
+    private static final int PREVIEW_DIVISOR = 4;
+    // Pages on each side of the viewport whose previews are rendered ahead
+    private static final int PREFETCH_PAGES = 2;
+    private static final int PREVIEW_CACHE_BYTES = 8 * 1024 * 1024;
+    // Pages whose real sizes are read per pass, between renders
+    private static final int MEASURE_BATCH = 32;
+
+    private final DecodeScheduler scheduler = new DecodeScheduler(TAG, 1);
+    private final LruCache<Long, Bitmap> tileCache;
+    private final LruCache<Long, Bitmap> previewCache = new LruCache<Long, Bitmap>(PREVIEW_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+    // Queued renders and their priority; main thread only
+    private final Map<Long, Integer> pending = new HashMap<>();
+    // Owner of the queued pass reading page sizes
+    private final Object measureOwner = new Object();
+
+    private final OverScroller scroller;
+    private final GestureDetector gestureDetector;
+    private final ScaleGestureDetector scaleDetector;
+    private final Paint pagePaint = new Paint();
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF destination = new RectF();
+    private final int pageGap;
+
+    private TileSource source;
+    private volatile boolean released;
+    // Bumped whenever the page layout changes, so renders for the old one are dropped
+    private int generation;
+
+    // Page positions at zoom 1, in view pixels
+    private float[] pageTops;
+    private float[] pageHeights;
+    private float documentHeight;
+
+    private float zoom = 1f;
+    private float offsetX;
+    private float offsetY;
+    private int currentPage = -1;
+    private OnPageChangeListener pageChangeListener;
+
+    public TiledDocumentView(Context context) {
+        this(context, null);
+    }
+
+    public TiledDocumentView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        pageGap = Math.round(8 * getResources().getDisplayMetrics().density);
+        pagePaint.setColor(Color.WHITE);
+        scroller = new OverScroller(context);
+        gestureDetector = new GestureDetector(context, new GestureListener());
+        scaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+
+        // An eighth of the heap, measured in bytes
+        int tileCacheBytes = (int) (Runtime.getRuntime().maxMemory() / 8);
+        tileCache = new LruCache<Long, Bitmap>(tileCacheBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Shows a source. The view takes ownership and closes it in {@link #release()}.
+     */
+    public void setSource(TileSource source) {
+        this.source = source;
+        zoom = 1f;
+        offsetX = 0;
+        offsetY = 0;
+        currentPage = -1;
+        layoutPages();
+        measurePages(source);
+    }
+
+    public void setOnPageChangeListener(OnPageChangeListener listener) {
+        pageChangeListener = listener;
+    }
+
+    /**
+     * Drops all pending work and closes the source once the render thread is
+     * done with it.
+     */
+    public void release() {
+        released = true;
+        scheduler.cancel(measureOwner);
+        for (Long key : pending.keySet()) {
+            scheduler.cancel(key);
+        }
+        pending.clear();
+        tileCache.evictAll();
+        previewCache.evictAll();
+
+        TileSource closing = source;
+        source = null;
+        if (closing != null) {
+            scheduler.submit(closing, Integer.MIN_VALUE, () -> {
+                try {
+                    closing.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close source", e);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        if (width != oldWidth) {
+            layoutPages();
+        } else {
+            clampOffsets();
+            requestTiles();
+        }
+    }
+
+    private void layoutPages() {
+        generation++;
+        for (Long key : pending.keySet()) {
+            scheduler.cancel(key);
+        }
+        pending.clear();
+        tileCache.evictAll();
+        previewCache.evictAll();
+
+        if (source == null || getWidth() == 0) {
+            pageTops = null;
+            return;
+        }
+
+        placePages(scaledPageHeights());
+        clampOffsets();
+        requestTiles();
+        invalidate();
+    }
+
+    /**
+     * Reads the real sizes of pages the source only estimated, a batch at a
+     * time on the render thread, behind every render.
+     */
+    private void measurePages(TileSource measuring) {
+        scheduler.submit(measureOwner, Integer.MAX_VALUE, () -> {
+            if (released) {
+                return;
+            }
+            boolean more;
+            try {
+                more = measuring.measurePages(MEASURE_BATCH);
+            } catch (IOException | RuntimeException e) {
+                // The remaining pages keep their estimated sizes
+                Log.w(TAG, "Failed to read page sizes", e);
+                more = false;
+            }
+
+            boolean measureMore = more;
+            post(() -> {
+                if (released || source != measuring) {
+                    return;
+                }
+                updatePageSizes();
+                if (measureMore) {
+                    measurePages(measuring);
+                }
+            });
+        });
+    }
+
+    /**
+     * Lays out again the pages whose sizes changed since the last layout,
+     * keeping the rendered tiles of the others.
+     */
+    private void updatePageSizes() {
+        if (pageTops == null || pageTops.length == 0) {
+            return;
+        }
+        float[] heights = scaledPageHeights();
+        Set<Integer> changed = new HashSet<>();
+        for (int i = 0; i < heights.length; i++) {
+            if (heights[i] != pageHeights[i]) {
+                changed.add(i);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        // Keep the point in the middle of the screen on the same spot of its page
+        float centerY = (offsetY + getHeight() / 2f) / zoom;
+        int anchor = pageAt(centerY);
+        float anchorFraction = (centerY - pageTops[anchor]) / pageHeights[anchor];
+        placePages(heights);
+        offsetY = (pageTops[anchor] + anchorFraction * pageHeights[anchor]) * zoom - getHeight() / 2f;
+
+        // Queued renders were cut for the old layout
+        generation++;
+        for (Long key : pending.keySet()) {
+            scheduler.cancel(key);
+        }
+        pending.clear();
+        evictPages(tileCache, changed);
+        evictPages(previewCache, changed);
+
+        clampOffsets();
+        requestTiles();
+        invalidate();
+    }
+
+    private float[] scaledPageHeights() {
+        float[] heights = new float[source.getPageCount()];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = (float) getWidth() * source.getPageHeight(i) / source.getPageWidth(i);
+        }
+        return heights;
+    }
+
+    private void placePages(float[] heights) {
+        pageTops = new float[heights.length];
+        pageHeights = heights;
+        float top = 0;
+        for (int i = 0; i < heights.length; i++) {
+            pageTops[i] = top;
+            top += heights[i] + pageGap;
+        }
+        documentHeight = Math.max(0, top - pageGap);
+    }
+
+    private static void evictPages(LruCache<Long, Bitmap> cache, Set<Integer> pages) {
+        for (Long key : cache.snapshot().keySet()) {
+            if (pages.contains((int) (key >>> 32))) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (pageTops == null || pageTops.length == 0) {
+            return;
+        }
+
+        int level = levelFor(zoom);
+        float tileScale = zoom / (1 << level);
+        int first = pageAt(offsetY / zoom);
+        int last = pageAt((offsetY + getHeight()) / zoom);
+        for (int page = first; page <= last; page++) {
+            float left = -offsetX;
+            float top = pageTops[page] * zoom - offsetY;
+            destination.set(left, top, left + getWidth() * zoom, top + pageHeights[page] * zoom);
+            canvas.drawRect(destination, pagePaint);
+
+            Bitmap preview = previewCache.get(tileKey(page, PREVIEW_LEVEL, 0, 0));
+            if (preview != null) {
+                canvas.drawBitmap(preview, null, destination, bitmapPaint);
+            }
+
+            int levelWidth = levelWidth(level);
+            int levelHeight = levelHeight(page, level);
+            int firstColumn = Math.max(0, (int) (offsetX / (TILE_SIZE * tileScale)));
+            int lastColumn = Math.min((levelWidth - 1) / TILE_SIZE,
+                    (int) ((offsetX + getWidth()) / (TILE_SIZE * tileScale)));
+            int firstRow = Math.max(0, (int) (-top / (TILE_SIZE * tileScale)));
+            int lastRow = Math.min((levelHeight - 1) / TILE_SIZE,
+                    (int) ((getHeight() - top) / (TILE_SIZE * tileScale)));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Bitmap tile = tileCache.get(tileKey(page, level, column, row));
+                    if (tile == null) {
+                        continue;
+                    }
+                    int tileLeft = column * TILE_SIZE;
+                    int tileTop = row * TILE_SIZE;
+                    destination.set(left + tileLeft * tileScale, top + tileTop * tileScale,
+                            left + Math.min(levelWidth, tileLeft + TILE_SIZE) * tileScale,
+                            top + Math.min(levelHeight, tileTop + TILE_SIZE) * tileScale);
+                    canvas.drawBitmap(tile, null, destination, bitmapPaint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues renders for what is on screen and just around it, and drops
+     * queued renders that are no longer needed.
+     */
+    private void requestTiles() {
+        if (source == null || pageTops == null || pageTops.length == 0 || getHeight() == 0) {
+            return;
+        }
+
+        Set<Long> wanted = new HashSet<>();
+        int height = getHeight();
+        int first = pageAt(offsetY / zoom);
+        int last = pageAt((offsetY + height) / zoom);
+
+        // Previews first: they are cheap and cover whole pages while tiles render
+        for (int page = first; page <= last; page++) {
+            requestPreview(page, DecodeScheduler.PRIORITY_VISIBLE, wanted);
+        }
+        int level = levelFor(zoom);
+        requestTiles(level, 0, height, DecodeScheduler.PRIORITY_VISIBLE, wanted);
+
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            if (last + i < pageTops.length) {
+                requestPreview(last + i, DecodeScheduler.PRIORITY_PREFETCH + i, wanted);
+            }
+            if (first - i >= 0) {
+                requestPreview(first - i, DecodeScheduler.PRIORITY_PREFETCH + i, wanted);
+            }
+        }
+        requestTiles(level, height, 2 * height, DecodeScheduler.PRIORITY_PREFETCH, wanted);
+        requestTiles(level, -height, 0, DecodeScheduler.PRIORITY_PREFETCH, wanted);
+
+        Iterator<Long> iterator = pending.keySet().iterator();
+        while (iterator.hasNext()) {
+            Long key = iterator.next();
+            if (!wanted.contains(key)) {
+                scheduler.cancel(key);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Requests the tiles of a level that intersect a band of the screen,
+     * given in view coordinates.
+     */
+    private void requestTiles(int level, float bandTop, float bandBottom, int priority, Set<Long> wanted) {
+        float tileScale = zoom / (1 << level);
+        int first = pageAt((offsetY + bandTop) / zoom);
+        int last = pageAt((offsetY + bandBottom) / zoom);
+        int levelWidth = levelWidth(level);
+        int firstColumn = Math.max(0, (int) (offsetX / (TILE_SIZE * tileScale)));
+        int lastColumn = Math.min((levelWidth - 1) / TILE_SIZE,
+                (int) ((offsetX + getWidth()) / (TILE_SIZE * tileScale)));
+
+        for (int page = first; page <= last; page++) {
+            float top = pageTops[page] * zoom - offsetY;
+            int levelHeight = levelHeight(page, level);
+            int firstRow = Math.max(0, (int) ((bandTop - top) / (TILE_SIZE * tileScale)));
+            int lastRow = Math.min((levelHeight - 1) / TILE_SIZE,
+                    (int) ((bandBottom - top) / (TILE_SIZE * tileScale)));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    long key = tileKey(page, level, column, row);
+                    wanted.add(key);
+                    if (tileCache.get(key) != null) {
+                        continue;
+                    }
+                    Rect region = new Rect(column * TILE_SIZE, row * TILE_SIZE,
+                            Math.min(levelWidth, (column + 1) * TILE_SIZE),
+                            Math.min(levelHeight, (row + 1) * TILE_SIZE));
+                    float scale = (float) levelWidth / source.getPageWidth(page);
+                    request(key, page, region, scale, priority, tileCache);
+                }
+            }
+        }
+    }
+
+    private void requestPreview(int page, int priority, Set<Long> wanted) {
+        long key = tileKey(page, PREVIEW_LEVEL, 0, 0);
+        wanted.add(key);
+        if (previewCache.get(key) != null) {
+            return;
+        }
+        float scale = (float) getWidth() / PREVIEW_DIVISOR / source.getPageWidth(page);
+        Rect region = new Rect(0, 0,
+                Math.max(1, Math.round(source.getPageWidth(page) * scale)),
+                Math.max(1, Math.round(source.getPageHeight(page) * scale)));
+        request(key, page, region, scale, priority, previewCache);
+    }
+
+    private void request(long key, int page, Rect region, float scale, int priority, LruCache<Long, Bitmap> cache) {
+        Integer queued = pending.get(key);
+        if (queued != null && queued <= priority) {
+            return;
+        }
+        pending.put(key, priority);
+
+        TileSource renderSource = source;
+        int renderGeneration = generation;
+        scheduler.submit(key, priority, () -> {
+            if (released) {
+                return;
+            }
+            Bitmap bitmap;
+            try {
+                bitmap = renderSource.renderRegion(page, region, scale);
+            } catch (IOException | RuntimeException e) {
+                // The page keeps its preview, or stays blank
+                Log.w(TAG, "Failed to render page " + page, e);
+                bitmap = null;
+            }
+
+            Bitmap result = bitmap;
+            post(() -> {
+                if (renderGeneration != generation || released) {
+                    return;
+                }
+                pending.remove(key);
+                if (result != null) {
+                    cache.put(key, result);
+                    invalidate();
+                }
+            });
+        });
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            moveTo(scroller.getCurrX(), scroller.getCurrY());
+            postInvalidateOnAnimation();
+        }
+    }
+
+    private void moveTo(float x, float y) {
+        offsetX = x;
+        offsetY = y;
+        clampOffsets();
+        requestTiles();
+        invalidate();
+    }
+
+    private void zoomTo(float newZoom, float focusX, float focusY) {
+        newZoom = Math.max(1f, Math.min(MAX_ZOOM, newZoom));
+        // Keep the point under the focus where it is
+        float documentX = (offsetX + focusX) / zoom;
+        float documentY = (offsetY + focusY) / zoom;
+        zoom = newZoom;
+        moveTo(documentX * zoom - focusX, documentY * zoom - focusY);
+    }
+
+    private void clampOffsets() {
+        float maxX = Math.max(0, getWidth() * zoom - getWidth());
+        float maxY = Math.max(0, documentHeight * zoom - getHeight());
+        offsetX = Math.max(0, Math.min(maxX, offsetX));
+        offsetY = Math.max(0, Math.min(maxY, offsetY));
+
+        if (pageTops != null && pageTops.length > 0) {
+            int page = pageAt((offsetY + getHeight() / 2f) / zoom);
+            if (page != currentPage) {
+                currentPage = page;
+                if (pageChangeListener != null) {
+                    pageChangeListener.onPageChanged(page, pageTops.length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the page at a vertical position at zoom 1, or the nearest one.
+     */
+    private int pageAt(float y) {
+        int low = 0;
+        int high = pageTops.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pageTops[middle] <= y) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Picks the tile level nearest the zoom, so tiles are never stretched or
+     * shrunk by more than a factor of about 1.4.
+     */
+    private static int levelFor(float zoom) {
+        int level = Math.round((float) (Math.log(zoom) / Math.log(2)));
+        return Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+
+    private int levelWidth(int level) {
+        return getWidth() << level;
+    }
+
+    private int levelHeight(int page, int level) {
+        return Math.max(1, Math.round(pageHeights[page] * (1 << level)));
+    }
+
+    private static long tileKey(int page, int level, int column, int row) {
+        return ((long) page << 32) | ((long) level << 28) | ((long) row << 14) | column;
+    }
+
+    private class GestureListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(MotionEvent event) {
+            scroller.forceFinished(true);
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent first, MotionEvent current, float distanceX, float distanceY) {
+            moveTo(offsetX + distanceX, offsetY + distanceY);
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent first, MotionEvent current, float velocityX, float velocityY) {
+            int maxX = (int) Math.max(0, getWidth() * zoom - getWidth());
+            int maxY = (int) Math.max(0, documentHeight * zoom - getHeight());
+            scroller.fling((int) offsetX, (int) offsetY, (int) -velocityX, (int) -velocityY, 0, maxX, 0, maxY);
+            postInvalidateOnAnimation();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(MotionEvent event) {
+            zoomTo(zoom > 1f ? 1f : DOUBLE_TAP_ZOOM, event.getX(), event.getY());
+            return true;
+        }
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            zoomTo(zoom * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+    }
+}
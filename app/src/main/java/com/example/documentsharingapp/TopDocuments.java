@@ -0,0 +1,132 @@
+package com.example.documentsharingapp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tracks all documents of a user, ranked, and hands out the best-ranked few.
+ *
+ * Every document lives in one score-ordered TreeSet, with a map from key to
+ * entry to find it again. Adding, rescoring or removing a document costs
+ * O(log n), and when a document leaves the top its replacement is simply
+ * the next entry in the set.
+ */
+public class TopDocuments {
+
+    public interface Scorer {
+        double score(Document document);
+    }
+
+    // Best first: higher score, then newer, then key for a total order
+    private static final Comparator<Entry> ORDER = (e1, e2) -> {
+        int result = Double.compare(e2.score, e1.score);
+        if (result == 0) {
+            result = Long.compare(e2.timestamp, e1.timestamp);
+        }
+        return result != 0 ? result : e1.key.compareTo(e2.key);
+    };
+
+    private final int capacity;
+    private final Scorer scorer;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranked = new TreeSet<>(ORDER);
+
+    public TopDocuments(int capacity, Scorer scorer) {
+        this.capacity = capacity;
+        this.scorer = scorer;
+    }
+
+    /**
+     * Adds a document or updates one that is already tracked.
+     */
+    public void put(Document document) {
+        Entry entry = new Entry(document, scorer.score(document));
+        Entry previous = entries.put(entry.key, entry);
+        if (previous != null) {
+            ranked.remove(previous);
+        }
+        ranked.add(entry);
+    }
+
+    public void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            ranked.remove(entry);
+        }
+    }
+
+    /**
+     * Re-reads the score of one document, e.g. after it was opened.
+     */
+    public void rescore(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            put(entry.document);
+        }
+    }
+
+    /**
+     * Re-reads the scores of all documents. Only needed when many scores
+     * change at once; costs O(n log n).
+     */
+    public void rescoreAll() {
+        List<Entry> rescored = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            rescored.add(new Entry(entry.document, scorer.score(entry.document)));
+        }
+        ranked.clear();
+        for (Entry entry : rescored) {
+            entries.put(entry.key, entry);
+            ranked.add(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        ranked.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns every document, best first.
+     */
+    public List<Document> all() {
+        List<Document> documents = new ArrayList<>(ranked.size());
+        for (Entry entry : ranked) {
+            documents.add(entry.document);
+        }
+        return documents;
+    }
+
+    /**
+     * Copies the top documents, best first, into the given list.
+     */
+    public void copyTopInto(List<Document> out) {
+        int count = 0;
+        for (Iterator<Entry> it = ranked.iterator(); it.hasNext() && count < capacity; count++) {
+            out.add(it.next().document);
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final Document document;
+        final double score;
+        final long timestamp;
+
+        Entry(Document document, double score) {
+            this.key = document.getKey();
+            this.document = document;
+            this.score = score;
+            this.timestamp = document.getTimestamp();
+        }
+    }
+}
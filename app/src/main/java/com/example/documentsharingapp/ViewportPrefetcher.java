@@ -0,0 +1,76 @@
+package com.example.documentsharingapp;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prefetches thumbnails for the rows just past the viewport of a list, in the
+ * direction the list is scrolling.
+ *
+ * The prefetch window is as long as the visible range, so a steady scroll
+ * finds the next screen already in memory. It is recomputed only when the
+ * visible range changes, and each new window replaces the previous one in
+ * the {@link ThumbnailLoader}.
+ */
+public class ViewportPrefetcher extends RecyclerView.OnScrollListener {
+
+    public interface DocumentSource {
+        int getItemCount();
+
+        Document getDocument(int position);
+    }
+
+    private final LinearLayoutManager layoutManager;
+    private final DocumentSource source;
+    private final ThumbnailLoader thumbnailLoader;
+
+    private int firstVisible = RecyclerView.NO_POSITION;
+    private int lastVisible = RecyclerView.NO_POSITION;
+    private boolean forward = true;
+
+    public ViewportPrefetcher(LinearLayoutManager layoutManager, DocumentSource source, ThumbnailLoader thumbnailLoader) {
+        this.layoutManager = layoutManager;
+        this.source = source;
+        this.thumbnailLoader = thumbnailLoader;
+    }
+
+    public void attach(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(this);
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        int delta = layoutManager.getOrientation() == LinearLayoutManager.HORIZONTAL ? dx : dy;
+        if (delta != 0) {
+            forward = delta > 0;
+        }
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || (first == firstVisible && last == lastVisible)) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        prefetch();
+    }
+
+    private void prefetch() {
+        int window = lastVisible - firstVisible + 1;
+        int itemCount = source.getItemCount();
+        List<Document> ahead = new ArrayList<>(window);
+
+        // Nearest rows first, so they get the highest prefetch priority
+        for (int i = 1; i <= window; i++) {
+            int position = forward ? lastVisible + i : firstVisible - i;
+            if (position < 0 || position >= itemCount) {
+                break;
+            }
+            ahead.add(source.getDocument(position));
+        }
+        thumbnailLoader.prefetch(ahead);
+    }
+}
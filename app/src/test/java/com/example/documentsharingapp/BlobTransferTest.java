@@ -0,0 +1,251 @@
+package com.example.documentsharingapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trips content through {@link BlobTransfer} and a
+ * {@link LocalBlobStore}, including delta uploads, resumed transfers,
+ * damaged chunks and released content. Chunks are stored in plaintext here,
+ * since the Keystore that encrypts them is not available off the device.
+ */
+public class BlobTransferTest {
+
+    private static final BlobTransfer.ProgressListener IGNORE_PROGRESS = (transferred, total) -> { };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService workers;
+    private CountingStore store;
+    private BlobTransfer transfer;
+
+    @Before
+    public void setUp() throws IOException {
+        workers = Executors.newFixedThreadPool(4);
+        store = new CountingStore(new LocalBlobStore(folder.newFolder("store"), FileOutputStream::new));
+        transfer = new BlobTransfer(store, workers, 4);
+    }
+
+    @After
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void upload_thenDownload_returnsSameContent() throws IOException {
+        byte[] content = randomContent(5 * 1024 * 1024 / 2, 1);
+        String contentHash = ContentHash.of(content, 0, content.length);
+
+        BlobManifest manifest = upload(content, contentHash);
+        assertEquals(content.length, manifest.getSize());
+        for (int i = 0; i < manifest.getChunkCount() - 1; i++) {
+            assertTrue(manifest.getChunkLength(i) >= ContentChunker.MIN_SIZE);
+            assertTrue(manifest.getChunkLength(i) <= ContentChunker.MAX_SIZE);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(store.getManifest(contentHash), 0, out, IGNORE_PROGRESS);
+        assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void download_resumesFromOffset() throws IOException {
+        byte[] content = randomContent(2 * 1024 * 1024 + 123, 2);
+        String contentHash = ContentHash.of(content, 0, content.length);
+        BlobManifest manifest = upload(content, contentHash);
+
+        int from = manifest.getChunkLength(0) + 77;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(manifest, from, out, IGNORE_PROGRESS);
+        assertArrayEquals(Arrays.copyOfRange(content, from, content.length), out.toByteArray());
+    }
+
+    @Test
+    public void upload_afterEdit_sendsOnlyChangedChunks() throws IOException {
+        byte[] original = randomContent(8 * 1024 * 1024, 3);
+        upload(original, ContentHash.of(original, 0, original.length));
+        int originalPuts = store.puts.get();
+
+        // Insert a few bytes in the middle, shifting everything after them
+        byte[] edited = new byte[original.length + 10];
+        int at = original.length / 2;
+        System.arraycopy(original, 0, edited, 0, at);
+        System.arraycopy(original, at, edited, at + 10, original.length - at);
+        store.puts.set(0);
+        store.sentBytes.set(0);
+        String editedHash = ContentHash.of(edited, 0, edited.length);
+        upload(edited, editedHash);
+
+        assertTrue("Sent " + store.puts.get() + " of " + originalPuts + " chunks", store.puts.get() <= 2);
+        assertTrue(store.sentBytes.get() <= 2 * ContentChunker.MAX_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(store.getManifest(editedHash), 0, out, IGNORE_PROGRESS);
+        assertArrayEquals(edited, out.toByteArray());
+    }
+
+    @Test
+    public void upload_afterInterruption_sendsOnlyTheRest() throws IOException {
+        byte[] content = randomContent(4 * 1024 * 1024, 5);
+        String contentHash = ContentHash.of(content, 0, content.length);
+        store.failAfterPuts = 2;
+        // One chunk at a time, so exactly the first two are stored
+        ExecutorService singleWorker = Executors.newSingleThreadExecutor();
+        try {
+            upload(new BlobTransfer(store, singleWorker, 1), content, contentHash);
+            fail("Upload should have been interrupted");
+        } catch (IOException expected) {
+            // The store went away after two chunks
+        } finally {
+            singleWorker.shutdown();
+        }
+        assertNull(store.getManifest(contentHash));
+
+        store.failAfterPuts = Integer.MAX_VALUE;
+        int storedBefore = store.puts.get();
+        assertEquals(2, storedBefore);
+        store.puts.set(0);
+        BlobManifest manifest = upload(content, contentHash);
+        assertEquals(manifest.getChunkCount() - storedBefore, store.puts.get());
+    }
+
+    @Test
+    public void emptyContent_roundTrips() throws IOException {
+        byte[] content = new byte[0];
+        String contentHash = ContentHash.of(content, 0, 0);
+        BlobManifest manifest = upload(content, contentHash);
+        assertTrue(manifest.getChunkHashes().isEmpty());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(manifest, 0, out, IGNORE_PROGRESS);
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void download_rejectsDamagedChunk() throws IOException {
+        byte[] content = randomContent(2 * 1024 * 1024, 4);
+        String contentHash = ContentHash.of(content, 0, content.length);
+        BlobManifest manifest = upload(content, contentHash);
+
+        String damaged = manifest.getChunkHashes().get(1);
+        store.putChunk(damaged, new byte[] {1, 2, 3}, 3);
+        try {
+            transfer.download(manifest, 0, new ByteArrayOutputStream(), IGNORE_PROGRESS);
+            fail("Damaged chunk was accepted");
+        } catch (IOException expected) {
+            // Caught by the hash check
+        }
+    }
+
+    @Test
+    public void deleteManifest_releasesOnlyUnsharedChunks() throws IOException {
+        byte[] original = randomContent(4 * 1024 * 1024, 6);
+        String originalHash = ContentHash.of(original, 0, original.length);
+        BlobManifest originalManifest = upload(original, originalHash);
+
+        // The second half changes, so the two documents share their leading chunks
+        byte[] edited = original.clone();
+        byte[] tail = randomContent(original.length / 2, 7);
+        System.arraycopy(tail, 0, edited, original.length / 2, tail.length);
+        String editedHash = ContentHash.of(edited, 0, edited.length);
+        BlobManifest editedManifest = upload(edited, editedHash);
+
+        store.deleteManifest(originalHash);
+
+        assertNull(store.getManifest(originalHash));
+        Set<String> missing = store.findMissing(originalManifest.getChunkHashes());
+        assertFalse("Nothing was released", missing.isEmpty());
+        for (String chunkHash : missing) {
+            assertFalse(editedManifest.getChunkHashes().contains(chunkHash));
+        }
+        assertTrue(store.findMissing(editedManifest.getChunkHashes()).isEmpty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(editedManifest, 0, out, IGNORE_PROGRESS);
+        assertArrayEquals(edited, out.toByteArray());
+    }
+
+    private BlobManifest upload(byte[] content, String contentHash) throws IOException {
+        return upload(transfer, content, contentHash);
+    }
+
+    private BlobManifest upload(BlobTransfer transfer, byte[] content, String contentHash) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        try (FileBlob source = new FileBlob(file)) {
+            return transfer.upload(source, contentHash, IGNORE_PROGRESS);
+        }
+    }
+
+    private static byte[] randomContent(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static class CountingStore implements BlobStore {
+        final BlobStore delegate;
+        final AtomicInteger puts = new AtomicInteger();
+        final AtomicLong sentBytes = new AtomicLong();
+        final AtomicInteger attempts = new AtomicInteger();
+        volatile int failAfterPuts = Integer.MAX_VALUE;
+
+        CountingStore(BlobStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> findMissing(Collection<String> chunkHashes) throws IOException {
+            return delegate.findMissing(chunkHashes);
+        }
+
+        @Override
+        public void putChunk(String chunkHash, byte[] data, int length) throws IOException {
+            if (attempts.incrementAndGet() > failAfterPuts) {
+                throw new IOException("Store unavailable");
+            }
+            delegate.putChunk(chunkHash, data, length);
+            puts.incrementAndGet();
+            sentBytes.addAndGet(length);
+        }
+
+        @Override
+        public int getChunk(String chunkHash, byte[] buffer) throws IOException {
+            return delegate.getChunk(chunkHash, buffer);
+        }
+
+        @Override
+        public void putManifest(String contentHash, BlobManifest manifest) throws IOException {
+            delegate.putManifest(contentHash, manifest);
+        }
+
+        @Override
+        public BlobManifest getManifest(String contentHash) throws IOException {
+            return delegate.getManifest(contentHash);
+        }
+
+        @Override
+        public void deleteManifest(String contentHash) throws IOException {
+            delegate.deleteManifest(contentHash);
+        }
+    }
+}
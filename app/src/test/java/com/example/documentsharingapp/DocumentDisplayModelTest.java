@@ -0,0 +1,124 @@
+package com.example.documentsharingapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that row labels are formatted when the model is built, and that
+ * rows rebound to other documents show only what their new model holds.
+ */
+public class DocumentDisplayModelTest {
+
+    @Test
+    public void labels_arePrecomputed() {
+        Document document = new Document("Report.PDF", "/nonexistent/Report.PDF", 0);
+        document.setSize(3 * 1024 * 1024 / 2);
+        DocumentDisplayModel model = DocumentDisplayModel.of(document);
+
+        assertEquals("Report.PDF", model.getName());
+        assertEquals(String.format("%.1f MB", 1.5), model.getSizeLabel());
+        assertEquals(3 * 1024 * 1024 / 2, model.getSize());
+        assertEquals(R.drawable.ic_pdf, model.getIconResource());
+        assertNotNull(model.getDateLabel());
+    }
+
+    @Test
+    public void missingFile_withoutRecordedSize_isUnknown() {
+        Document document = new Document("notes.txt", "/nonexistent/notes.txt", 0);
+        DocumentDisplayModel model = DocumentDisplayModel.of(document);
+
+        assertEquals("Unknown", model.getSizeLabel());
+        assertEquals(0, model.getSize());
+        assertEquals(R.drawable.ic_file, model.getIconResource());
+        assertNull(model.getThumbnailKey());
+    }
+
+    @Test
+    public void recycledRow_showsOnlyTheNewDocument() {
+        Document first = new Document("Report.PDF", "/nonexistent/Report.PDF", 0);
+        first.setSize(3 * 1024 * 1024 / 2);
+        Document second = new Document("notes.txt", "/nonexistent/notes.txt", 86400000L * 400);
+        second.setSize(1024 * 1024);
+        DocumentDisplayModel secondModel = DocumentDisplayModel.forDocument(second);
+        RecordingRow row = new RecordingRow();
+
+        DocumentDisplayModel.forDocument(first).bindTo(row);
+        secondModel.bindTo(row);
+
+        assertEquals("notes.txt", row.name);
+        assertEquals(secondModel.getDateLabel(), row.date);
+        assertEquals(String.format("%.1f MB", 1.0), row.size);
+        assertEquals(R.drawable.ic_file, row.icon);
+        // Every view is set on every bind, so nothing of the first document survives
+        assertEquals(8, row.calls);
+    }
+
+    @Test
+    public void preparedModel_isReusedAndBindsTheSameEveryTime() {
+        Document document = new Document("Report.PDF", "/nonexistent/Report.PDF", 0);
+        document.setSize(2048);
+        DocumentDisplayModel model = DocumentDisplayModel.forDocument(document);
+        assertSame(model, DocumentDisplayModel.forDocument(document));
+
+        RecordingRow before = new RecordingRow();
+        model.bindTo(before);
+        // A row scrolled out and back in is bound from the same model again
+        RecordingRow row = new RecordingRow();
+        model.bindTo(row);
+        model.bindTo(row);
+
+        assertEquals(before.name, row.name);
+        assertEquals(before.date, row.date);
+        assertEquals(before.size, row.size);
+        assertEquals(before.icon, row.icon);
+    }
+
+    @Test
+    public void changedDocument_getsItsOwnModel() {
+        Document original = new Document("Report.PDF", "/nonexistent/Report.PDF", 0);
+        original.setSize(1024 * 1024);
+        DocumentDisplayModel originalModel = DocumentDisplayModel.forDocument(original);
+
+        // Every database event brings a new Document, so its model is never the stale one
+        Document changed = new Document("Report.PDF", "/nonexistent/Report.PDF", 0);
+        changed.setSize(2 * 1024 * 1024);
+        DocumentDisplayModel changedModel = DocumentDisplayModel.forDocument(changed);
+
+        assertNotSame(originalModel, changedModel);
+        assertEquals(String.format("%.1f MB", 1.0), originalModel.getSizeLabel());
+        assertEquals(String.format("%.1f MB", 2.0), changedModel.getSizeLabel());
+    }
+
+    private static class RecordingRow implements DocumentDisplayModel.Row {
+        String name;
+        String date;
+        String size;
+        int icon;
+        int calls;
+
+        @Override
+        public void showName(String name) {
+            this.name = name;
+            calls++;
+        }
+
+        @Override
+        public void showDate(String dateLabel) {
+            date = dateLabel;
+            calls++;
+        }
+
+        @Override
+        public void showSize(String sizeLabel) {
+            size = sizeLabel;
+            calls++;
+        }
+
+        @Override
+        public void showIcon(int iconResource) {
+            icon = iconResource;
+            calls++;
+        }
+    }
+}
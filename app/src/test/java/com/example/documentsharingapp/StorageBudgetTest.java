@@ -0,0 +1,155 @@
+package com.example.documentsharingapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs eviction passes against documents uploaded to a
+ * {@link LocalBlobStore}, and brings evicted content back from it.
+ */
+public class StorageBudgetTest {
+
+    private static final int DOCUMENT_SIZE = 256 * 1024;
+    private static final long NOW = 1700000000000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService workers;
+    private LocalBlobStore store;
+    private BlobTransfer transfer;
+    private Predicate<String> isStored;
+
+    @Before
+    public void setUp() throws IOException {
+        workers = Executors.newFixedThreadPool(2);
+        store = new LocalBlobStore(folder.newFolder("store"), FileOutputStream::new);
+        transfer = new BlobTransfer(store, workers, 2);
+        isStored = contentHash -> {
+            try {
+                return store.getManifest(contentHash) != null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void evict_removesColdestStoredDocumentsUntilWithinBudget() throws IOException {
+        TestDocument unsynced = newDocument(0.0, 1, false);
+        TestDocument cold = newDocument(0.5, 2, true);
+        TestDocument warm = newDocument(1.0, 3, true);
+        TestDocument hot = newDocument(4.0, 4, true);
+        List<StorageBudget.Candidate> candidates = candidatesOf(unsynced, cold, warm, hot);
+
+        long left = StorageBudget.evict(candidates, 2L * DOCUMENT_SIZE, NOW, isStored);
+
+        assertEquals(2L * DOCUMENT_SIZE, left);
+        // The coldest is passed over, since its content would have nowhere to come back from
+        assertTrue(unsynced.file.isFile());
+        assertFalse(cold.file.exists());
+        assertFalse(warm.file.exists());
+        assertTrue(hot.file.isFile());
+    }
+
+    @Test
+    public void evict_keepsEverythingWithinBudget() throws IOException {
+        TestDocument cold = newDocument(0.5, 5, true);
+        TestDocument hot = newDocument(4.0, 6, true);
+
+        long left = StorageBudget.evict(candidatesOf(cold, hot), 2L * DOCUMENT_SIZE, NOW, isStored);
+
+        assertEquals(2L * DOCUMENT_SIZE, left);
+        assertTrue(cold.file.isFile());
+        assertTrue(hot.file.isFile());
+    }
+
+    @Test
+    public void evict_keepsRecentlyWrittenFiles() throws IOException {
+        TestDocument justOpened = newDocument(0.5, 7, true);
+        justOpened.file.setLastModified(NOW - 1000);
+        TestDocument warm = newDocument(1.0, 8, true);
+
+        long left = StorageBudget.evict(candidatesOf(justOpened, warm), DOCUMENT_SIZE, NOW, isStored);
+
+        assertEquals(DOCUMENT_SIZE, left);
+        assertTrue(justOpened.file.isFile());
+        assertFalse(warm.file.exists());
+    }
+
+    @Test
+    public void evicted_isDownloadedAgainFromTheStore() throws IOException {
+        TestDocument cold = newDocument(0.5, 9, true);
+        TestDocument hot = newDocument(4.0, 10, true);
+        StorageBudget.evict(candidatesOf(cold, hot), DOCUMENT_SIZE, NOW, isStored);
+        assertFalse(cold.file.exists());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.download(store.getManifest(cold.contentHash), 0, out, (transferred, total) -> { });
+        assertArrayEquals(cold.content, out.toByteArray());
+    }
+
+    private TestDocument newDocument(double score, long seed, boolean uploaded) throws IOException {
+        byte[] content = new byte[DOCUMENT_SIZE];
+        new Random(seed).nextBytes(content);
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        file.setLastModified(NOW - HOUR);
+        TestDocument document = new TestDocument(file, content, ContentHash.of(content, 0, content.length), score);
+        if (uploaded) {
+            try (FileBlob source = new FileBlob(file)) {
+                transfer.upload(source, document.contentHash, (transferred, total) -> { });
+            }
+        }
+        return document;
+    }
+
+    private static List<StorageBudget.Candidate> candidatesOf(TestDocument... documents) {
+        List<StorageBudget.Candidate> candidates = new ArrayList<>();
+        for (TestDocument document : documents) {
+            candidates.add(new StorageBudget.Candidate(document.contentHash, document.score, NOW - HOUR,
+                    Collections.singletonList(document.file)));
+        }
+        return candidates;
+    }
+
+    private static class TestDocument {
+        final File file;
+        final byte[] content;
+        final String contentHash;
+        final double score;
+
+        TestDocument(File file, byte[] content, String contentHash, double score) {
+            this.file = file;
+            this.content = content;
+            this.contentHash = contentHash;
+            this.score = score;
+        }
+    }
+}